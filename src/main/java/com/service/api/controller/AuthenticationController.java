@@ -1,27 +1,30 @@
 package com.service.api.controller;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
-import com.auth0.jwt.interfaces.DecodedJWT;
 import com.service.api.response.ApiResponse;
 import com.service.api.response.TokenResponse;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.service.config.JwtKeyRing;
 import com.service.config.Translator;
 import com.service.exception.ResourceNotFoundException;
-import com.service.model.Token;
+import com.service.model.AppUserDetails;
+import com.service.service.LoginAttemptService;
+import com.service.service.RefreshTokenStore;
+import com.service.service.RevocationService;
+import com.service.service.RoleService;
 import com.service.service.TokenService;
 import com.service.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -29,11 +32,10 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.Email;
-import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-import static com.service.util.ApiConst.USER_ROLE;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 import static org.springframework.http.HttpStatus.*;
 
@@ -46,21 +48,31 @@ public class AuthenticationController {
     private final AuthenticationManager authenticationManager;
     private final UserService userService;
     private final TokenService tokenService;
-
-    @Value("${jwt.secret}")
-    private String secretKey;
-    @Value("${jwt.token.validity}")
-    private long jwtTokenValidity;
+    private final RoleService roleService;
+    private final LoginAttemptService loginAttemptService;
+    private final RevocationService revocationService;
+    private final JwtKeyRing keyRing;
 
     @Operation(description = "Authenticate to Application")
     @PostMapping("/login")
-    public ResponseEntity<TokenResponse> login(HttpServletRequest request, @RequestParam("username") String username, @RequestParam("password") String password) {
+    public ResponseEntity<TokenResponse> login(HttpServletRequest request, @RequestParam("username") String username, @RequestParam("password") String password,
+                                               @RequestParam(name = "deviceId", required = false) String deviceId) {
         log.info("Username is {} and Password is {}", username, password);
+        String address = request.getRemoteAddr();
+        loginAttemptService.checkAllowed(username, address);
+
         UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(username, password);
-        Authentication authentication = authenticationManager.authenticate(authenticationToken);
+        Authentication authentication;
+        try {
+            authentication = authenticationManager.authenticate(authenticationToken);
+        } catch (AuthenticationException e) {
+            loginAttemptService.loginFailed(username, address);
+            throw e;
+        }
+        loginAttemptService.loginSucceeded(username);
 
-        User user = (User) authentication.getPrincipal();
-        TokenResponse tokens = tokenService.generateToken(user, request.getRequestURL().toString());
+        AppUserDetails user = (AppUserDetails) authentication.getPrincipal();
+        TokenResponse tokens = tokenService.generateToken(user, request.getRequestURL().toString(), deviceId);
         return ResponseEntity.ok(tokens);
     }
 
@@ -72,31 +84,47 @@ public class AuthenticationController {
         String authorizeHeader = request.getHeader(AUTHORIZATION);
         if (authorizeHeader != null && authorizeHeader.startsWith("Bearer ")) {
             String refreshToken = authorizeHeader.substring("Bearer ".length());
-            Token token = tokenService.findByToken(refreshToken);
-            if (token == null) {
+            DecodedJWT decodedJWT = tokenService.verifyToken(refreshToken);
+            RefreshTokenStore.Session session = tokenService.findRefreshSession(refreshToken);
+            if (session == null || revocationService.isRevoked(decodedJWT, refreshToken)) {
                 throw new ResourceNotFoundException(Translator.toLocale("refresh-token-not-found"));
             }
 
-            Algorithm algorithm = Algorithm.HMAC256(secretKey.getBytes());
-            JWTVerifier verifier = JWT.require(algorithm).build();
-            DecodedJWT decodedJWT = verifier.verify(refreshToken);
-            String username = decodedJWT.getSubject();
-            User user = (User) userService.loadUserByUsername(username);
-
-            List<String> authorities = user.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList());
-            String accessToken = JWT.create()
-                    .withSubject(username)
-                    .withExpiresAt(new Date(System.currentTimeMillis() + jwtTokenValidity * 60 * 1000))
-                    .withIssuer(request.getRequestURL().toString())
-                    .withClaim(USER_ROLE, authorities)
-                    .sign(algorithm);
-
-            TokenResponse tokens = new TokenResponse(user.getUsername(), authorities.toString(), accessToken, refreshToken);
+            List<String> authorities = roleService.getRoles(session.getUsername());
+            String accessToken = tokenService.generateAccessToken(session.getUserId(), session.getUsername(), authorities, request.getRequestURL().toString());
+
+            TokenResponse tokens = new TokenResponse(session.getUsername(), authorities.toString(), accessToken, refreshToken);
             return ResponseEntity.ok(tokens);
         } else {
             throw new ResourceNotFoundException(Translator.toLocale("refresh-header-not-found"));
         }
     }
+
+    @Operation(description = "Revoke access token and refresh token of current session")
+    @PostMapping("/logout")
+    public ApiResponse logout(HttpServletRequest request, @RequestParam(name = "refreshToken", required = false) String refreshToken) throws ResourceNotFoundException {
+        log.info("Revoking tokens of current session");
+
+        String authorizeHeader = request.getHeader(AUTHORIZATION);
+        if (authorizeHeader == null || !authorizeHeader.startsWith("Bearer ")) {
+            throw new ResourceNotFoundException(Translator.toLocale("refresh-header-not-found"));
+        }
+        String accessToken = authorizeHeader.substring("Bearer ".length());
+        revocationService.revokeToken(tokenService.verifyToken(accessToken), accessToken);
+        if (StringUtils.hasText(refreshToken)) {
+            revocationService.revokeToken(tokenService.verifyToken(refreshToken), refreshToken);
+        }
+        return new ApiResponse(OK, Translator.toLocale("user-logout-success"));
+    }
+
+    @Operation(description = "Public keys to verify tokens locally")
+    @GetMapping("/jwks")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(5, TimeUnit.MINUTES))
+                .body(keyRing.jwks());
+    }
+
     @Operation(description = "Send reset token to email")
     @PostMapping("/forgot-password")
     public ApiResponse forgotPassword(@RequestParam("email") @Email String email) throws ResourceNotFoundException {
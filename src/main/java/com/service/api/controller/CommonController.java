@@ -1,21 +1,35 @@
 package com.service.api.controller;
 
+import com.service.api.form.BulkEmailForm;
 import com.service.api.form.EmailForm;
+import com.service.api.form.FileCompleteForm;
+import com.service.api.form.FileUploadForm;
 import com.service.api.response.ApiResponse;
 import com.service.config.Translator;
 import com.service.dto.FileDTO;
+import com.service.dto.MailJobDTO;
+import com.service.exception.ResourceNotFoundException;
+import com.service.service.BulkMailService;
+import com.service.service.FileService;
 import com.service.service.MailService;
 import com.service.service.UploadService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.mail.MessagingException;
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import java.io.IOException;
+import java.security.Principal;
 
 import static com.service.util.ApiConst.API_VERSION_1;
+import static org.springframework.http.HttpStatus.ACCEPTED;
+import static org.springframework.http.HttpStatus.CREATED;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 import static org.springframework.http.HttpStatus.OK;
 
@@ -28,22 +42,95 @@ public class CommonController {
     private UploadService uploadService;
     @Autowired
     private MailService mailService;
+    @Autowired
+    private BulkMailService bulkMailService;
+    @Autowired
+    private FileService fileService;
 
     @Operation(description = "Upload file")
     @PostMapping(path = "/upload", headers = API_VERSION_1)
-    public ApiResponse uploadFile(@RequestParam("file") MultipartFile file) {
+    public ApiResponse uploadFile(@RequestParam("file") MultipartFile file, Principal principal) {
         log.info("Request api POST api/v1/commons/upload");
 
-        FileDTO fileDTO = uploadService.uploadFile(file);
+        FileDTO fileDTO = uploadService.uploadFile(file, principal.getName());
+        return new ApiResponse(OK, Translator.toLocale("file-upload-success"), fileDTO);
+    }
+
+    @Operation(description = "Upload file streamed from the request body, named by the path. " +
+            "With X-Content-SHA256 and Expect: 100-continue, content already stored is not sent at all")
+    @PutMapping(path = "/upload/{name}", headers = API_VERSION_1)
+    public ApiResponse uploadFile(@PathVariable("name") String name,
+                                  @RequestHeader(value = "X-Content-SHA256", required = false) String sha256,
+                                  HttpServletRequest request, Principal principal) throws IOException {
+        log.info("Request api PUT api/v1/commons/upload/{}", name);
+
+        FileDTO fileDTO = uploadService.uploadFile(name, request.getContentType(), sha256, request.getContentLengthLong(),
+                principal.getName(), request.getInputStream());
         return new ApiResponse(OK, Translator.toLocale("file-upload-success"), fileDTO);
     }
 
-    @Operation(description = "Send email to someone")
+    @Operation(description = "Get URL to upload file straight to storage")
+    @PostMapping(path = "/files/upload-url", headers = API_VERSION_1)
+    public ApiResponse getUploadUrl(@Valid @RequestBody FileUploadForm form) {
+        log.info("Request api POST api/v1/commons/files/upload-url");
+
+        return new ApiResponse(OK, Translator.toLocale("file-url-success"), fileService.uploadUrl(form));
+    }
+
+    @Operation(description = "Record file uploaded with an upload URL")
+    @PostMapping(path = "/files", headers = API_VERSION_1)
+    public ApiResponse completeUpload(@Valid @RequestBody FileCompleteForm form, Principal principal) throws ResourceNotFoundException {
+        log.info("Request api POST api/v1/commons/files");
+
+        FileDTO fileDTO = fileService.complete(form.getKey(), principal.getName());
+        return new ApiResponse(CREATED, Translator.toLocale("file-upload-success"), fileDTO);
+    }
+
+    @Operation(description = "Get URL to download file straight from storage")
+    @GetMapping(path = "/files/{id}/download-url", headers = API_VERSION_1)
+    public ApiResponse getDownloadUrl(@PathVariable("id") long id, Principal principal) throws ResourceNotFoundException {
+        log.info("Request api GET api/v1/commons/files/{}/download-url", id);
+
+        return new ApiResponse(OK, Translator.toLocale("file-url-success"), fileService.downloadUrl(id, principal.getName()));
+    }
+
+    @Operation(description = "Drop a file uploaded by the caller, the content is deleted with its last upload")
+    @DeleteMapping(path = "/files/{id}", headers = API_VERSION_1)
+    public ApiResponse deleteFile(@PathVariable("id") long id, Principal principal) throws ResourceNotFoundException {
+        log.info("Request api DELETE api/v1/commons/files/{}", id);
+
+        fileService.release(id, principal.getName());
+        return new ApiResponse(NO_CONTENT, Translator.toLocale("file-delete-success"));
+    }
+
+    @Operation(description = "Send email to someone, as given or rendered from a template")
     @PostMapping(path = "/send-email", headers = API_VERSION_1)
     public ApiResponse sendEmail(@RequestBody EmailForm form) throws MessagingException {
         log.info("Request api POST api/v1/commons/send-email");
 
-        mailService.sendEmail(form.getFrom(), form.getTo(), form.getSubject(), form.getBody(), form.getFile());
+        if (StringUtils.hasText(form.getTemplate())) {
+            mailService.sendTemplateEmail(form.getFrom(), form.getTo(), form.getSubject(), form.getTemplate(),
+                    form.getModel(), form.getFile());
+        } else {
+            mailService.sendEmail(form.getFrom(), form.getTo(), form.getSubject(), form.getBody(), form.getFile());
+        }
         return new ApiResponse(NO_CONTENT, Translator.toLocale("file-upload-success"));
     }
+
+    @Operation(description = "Send many emails in the background, returns a job to poll")
+    @PostMapping(path = "/send-email/bulk", headers = API_VERSION_1)
+    public ApiResponse sendEmails(@Valid @RequestBody BulkEmailForm form) {
+        log.info("Request api POST api/v1/commons/send-email/bulk");
+
+        MailJobDTO job = bulkMailService.submit(form);
+        return new ApiResponse(ACCEPTED, Translator.toLocale("mail-bulk-accepted"), job);
+    }
+
+    @Operation(description = "Get progress of a bulk email job")
+    @GetMapping(path = "/send-email/bulk/{id}", headers = API_VERSION_1)
+    public ApiResponse getEmailJob(@PathVariable("id") String id) throws ResourceNotFoundException {
+        log.info("Request api GET api/v1/commons/send-email/bulk/{}", id);
+
+        return new ApiResponse(OK, "job", bulkMailService.get(id));
+    }
 }
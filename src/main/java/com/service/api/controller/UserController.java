@@ -1,25 +1,43 @@
 package com.service.api.controller;
 
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.service.api.form.UserForm;
+import com.service.api.form.UserPatchForm;
 import com.service.api.response.ApiResponse;
+import com.service.api.response.BulkResponse;
 import com.service.api.response.ErrorResponse;
+import com.service.api.response.ImportResponse;
 import com.service.api.response.PageResponse;
 import com.service.config.Translator;
+import com.service.dto.UserVersionDTO;
+import com.service.exception.BadRequestException;
 import com.service.exception.ResourceNotFoundException;
 import com.service.model.AppUser;
+import com.service.service.UserExportService;
+import com.service.service.UserImportService;
 import com.service.service.UserService;
 import com.service.util.ApiConst;
+import com.service.util.ETagUtil;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.util.StringUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import java.io.IOException;
+import java.util.List;
 
 import static org.springframework.http.HttpStatus.*;
 
@@ -29,31 +47,138 @@ import static org.springframework.http.HttpStatus.*;
 @Tag(name = "User Controller")
 @Validated
 public class UserController {
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
     @Autowired
     private UserService userService;
+    @Value("${user.export.timeout}")
+    private long exportTimeout;
 
     @Operation(description = "Get all of user information")
     @GetMapping(headers = ApiConst.API_VERSION_1)
     public ApiResponse getUserList(
             @RequestParam(name = "search", required = false) String search,
             @RequestParam(name = "pageNo", defaultValue = "1") int pageNo,
-            @RequestParam(name = "pageSize", defaultValue = "20") int pageSize) {
+            @RequestParam(name = "pageSize", defaultValue = "20") @Min(1) int pageSize,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "count", defaultValue = "false") boolean count,
+            @RequestParam(name = "fields", required = false) String fields) {
         log.info("Request api GET api/v1/users");
 
         PageResponse response;
-        if (StringUtils.hasLength(search)) {
-            response = userService.searchByName(search, pageNo, pageSize);
+        if (cursor != null) {
+            // pages of offset mode stay unbounded for existing clients, keyset pagination is new and capped
+            if (pageSize > MAX_CURSOR_PAGE_SIZE) {
+                throw new BadRequestException(Translator.toLocale("page-size-invalid"));
+            }
+            // an empty cursor starts keyset pagination from the first page
+            response = userService.findAfter(search, cursor, pageSize, count, fields);
+        } else if (StringUtils.hasLength(search)) {
+            response = userService.searchByName(search, pageNo, pageSize, fields);
         } else {
-            response = userService.findAll(pageNo, pageSize);
+            response = userService.findAll(pageNo, pageSize, fields);
         }
         return new ApiResponse(OK, "users", response);
     }
 
+    @Operation(description = "Get users by ids in one query, in the order of ids")
+    @GetMapping(params = "ids", headers = ApiConst.API_VERSION_1)
+    public ApiResponse getUsersByIds(@RequestParam("ids") List<Long> ids,
+                                     @RequestParam(name = "fields", required = false) String fields) {
+        log.info("Request api GET api/v1/users?ids");
+        return new ApiResponse(OK, "users", userService.findByIds(ids, fields));
+    }
+
+    @Operation(description = "Suggest usernames by prefix of username or email")
+    @GetMapping(path = "/suggest", headers = ApiConst.API_VERSION_1)
+    public ApiResponse suggest(@RequestParam("prefix") String prefix,
+                               @RequestParam(name = "limit", defaultValue = "10") @Min(1) @Max(100) int limit) {
+        log.info("Request api GET api/v1/users/suggest");
+        return new ApiResponse(OK, "users", userService.suggest(prefix, limit));
+    }
+
+    @Operation(description = "Export users as NDJSON or CSV, streamed without paging")
+    @GetMapping(path = "/export", headers = ApiConst.API_VERSION_1)
+    public WebAsyncTask<Void> exportUsers(
+            @RequestParam(name = "search", required = false) String search,
+            @RequestParam(name = "fields", required = false) String fields,
+            @RequestParam(name = "format", defaultValue = "ndjson") String format,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) {
+        log.info("Request api GET api/v1/users/export");
+
+        boolean csv = "csv".equalsIgnoreCase(format);
+        boolean gzip = acceptsGzip(acceptEncoding);
+        UserExportService.Export export = userService.exportUsers(search, fields, csv, gzip);
+
+        response.setContentType(csv ? UserImportService.CSV : UserImportService.NDJSON);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users." + (csv ? "csv" : "ndjson"));
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        // only exports may stream this long, other async requests keep the default timeout
+        WebAsyncTask<Void> task = new WebAsyncTask<>(exportTimeout, () -> {
+            export.writeTo(response.getOutputStream());
+            return null;
+        });
+        // a task timed out before it started never writes, its slot is released here
+        task.onCompletion(export::release);
+        return task;
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows gzip, explicitly or through *, with a non-zero quality
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                return accepted;
+            }
+            if ("*".equals(name)) {
+                wildcard = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
     @Operation(description = "Get user information")
     @GetMapping(path = "/{id}", headers = ApiConst.API_VERSION_1)
-    public ApiResponse getUser(@PathVariable("id") @Min(1) Long id) throws ResourceNotFoundException {
+    public ApiResponse getUser(@PathVariable("id") @Min(1) Long id, WebRequest webRequest,
+                               HttpServletResponse response) throws ResourceNotFoundException {
         log.info("Request api GET api/v1/users/{}", id);
-        AppUser user = userService.getUserById(id);
+
+        // answer revalidations from the version alone, before the user is loaded
+        UserVersionDTO version = userService.getVersion(id);
+        long lastModified = version.getUpdatedDate() != null ? version.getUpdatedDate().getTime() : -1;
+        if (webRequest.checkNotModified(ETagUtil.strong(id, version.getVersion()), lastModified)) {
+            return null;
+        }
+
+        // a cached user lagging behind the version just read is loaded again, and the validators written by
+        // checkNotModified are replaced by those of the body sent, which may be newer
+        AppUser user = userService.getUserById(id, version.getVersion());
+        response.setHeader(HttpHeaders.ETAG, ETagUtil.strong(id, user.getVersion()));
+        if (user.getUpdatedDate() != null) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, user.getUpdatedDate().getTime());
+        }
         return new ApiResponse(OK, "user", user);
     }
 
@@ -72,6 +197,16 @@ public class UserController {
         }
     }
 
+    @Operation(description = "Import users from CSV with username,email,password header or from NDJSON")
+    @PostMapping(path = "/import", consumes = {UserImportService.CSV, UserImportService.NDJSON}, headers = ApiConst.API_VERSION_1)
+    public ApiResponse importUsers(HttpServletRequest request) throws IOException {
+        log.info("Request api POST api/v1/users/import");
+
+        // the body is read as a stream, never buffered whole
+        ImportResponse response = userService.importUsers(request.getInputStream(), request.getContentType());
+        return new ApiResponse(OK, Translator.toLocale("user-import-success"), response);
+    }
+
     @Operation(description = "Update user information")
     @PutMapping(headers = ApiConst.API_VERSION_1)
     public ApiResponse updateUser(@Valid @RequestBody UserForm form) throws ResourceNotFoundException {
@@ -81,6 +216,28 @@ public class UserController {
         return new ApiResponse(ACCEPTED, Translator.toLocale("user-update-success"));
     }
 
+    @Operation(description = "Update email and username of many users")
+    @PatchMapping(headers = ApiConst.API_VERSION_1)
+    public ApiResponse patchUsers(@RequestBody List<@Valid UserPatchForm> forms) {
+        log.info("Request api PATCH api/v1/users");
+
+        BulkResponse response = userService.patchAll(forms);
+        return new ApiResponse(OK, Translator.toLocale("user-bulk-update-success"), response);
+    }
+
+    @Operation(description = "Apply a JSON merge patch to user, If-Match must carry the ETag it was made against")
+    @PatchMapping(path = "/{id}", consumes = "application/merge-patch+json", headers = ApiConst.API_VERSION_1)
+    public ApiResponse patchUser(@PathVariable("id") @Min(1) Long id,
+                                 @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                 @RequestBody JsonNode patch) throws ResourceNotFoundException {
+        log.info("Request api PATCH api/v1/users/{}", id);
+
+        long version = userService.mergePatch(id, ifMatch, patch);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(ETagUtil.strong(id, version));
+        return new ApiResponse(OK, Translator.toLocale("user-update-success"), null, headers);
+    }
+
     @Operation(description = "Change password")
     @PatchMapping(path = "/change-password/{id}", headers = ApiConst.API_VERSION_1)
     public ApiResponse changPassword(@PathVariable("id") @Min(1) Long id, @RequestParam("password") String password) throws ResourceNotFoundException {
@@ -90,6 +247,24 @@ public class UserController {
         return new ApiResponse(ACCEPTED, Translator.toLocale("user-change-password-success"));
     }
 
+    @Operation(description = "Revoke all sessions of user")
+    @PostMapping(path = "/{id}/revoke-sessions", headers = ApiConst.API_VERSION_1)
+    public ApiResponse revokeSessions(@PathVariable("id") @Min(1) Long id) throws ResourceNotFoundException {
+        log.info("Request api POST api/v1/users/{}/revoke-sessions", id);
+
+        userService.revokeSessions(id);
+        return new ApiResponse(ACCEPTED, Translator.toLocale("user-revoke-sessions-success"));
+    }
+
+    @Operation(description = "Delete many users permanently")
+    @DeleteMapping(params = "ids", headers = ApiConst.API_VERSION_1)
+    public ApiResponse deleteUsers(@RequestParam("ids") List<Long> ids) {
+        log.info("Request api DELETE api/v1/users?ids");
+
+        BulkResponse response = userService.deleteAll(ids);
+        return new ApiResponse(OK, Translator.toLocale("user-bulk-delete-success"), response);
+    }
+
     // @PreAuthorize("hasAuthority('SYSTEM_ADMIN')")
     @Operation(description = "Delete user permanently")
     @DeleteMapping(path = "/{id}", headers = ApiConst.API_VERSION_1)
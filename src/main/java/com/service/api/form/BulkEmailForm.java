@@ -0,0 +1,39 @@
+package com.service.api.form;
+
+import lombok.Data;
+import org.springframework.util.StringUtils;
+
+import javax.validation.Valid;
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Email;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * Either the same email to many recipients, or many complete emails
+ */
+@Data
+public class BulkEmailForm {
+    @Email(message = "From must be an email")
+    private String from;
+    private String subject;
+    private String body;
+    private List<@NotBlank(message = "Recipient can not blank") @Email(message = "Recipient must be an email") String> to;
+    private List<@NotNull @Valid EmailForm> messages;
+
+    /**
+     * The shared sender and subject are only required with shared recipients
+     */
+    @AssertTrue(message = "From and subject can not blank")
+    public boolean isSharedEmailComplete() {
+        return to == null || to.isEmpty() || (StringUtils.hasText(from) && StringUtils.hasText(subject));
+    }
+
+    @AssertTrue(message = "Every email must have from, to and subject")
+    public boolean isMessagesComplete() {
+        return messages == null || messages.stream().allMatch(message -> message == null
+                || (StringUtils.hasText(message.getFrom()) && StringUtils.hasText(message.getTo())
+                && StringUtils.hasText(message.getSubject())));
+    }
+}
@@ -2,12 +2,19 @@ package com.service.api.form;
 
 import lombok.Data;
 
+import javax.validation.constraints.Email;
+import java.util.Map;
+
 @Data
 public class EmailForm {
+    @Email(message = "From must be an email")
     private String from;
+    @Email(message = "To must be an email")
     private String to;
     private String subject;
     private String body;
     private String file;
+    private String template;
+    private Map<String, Object> model;
 
 }
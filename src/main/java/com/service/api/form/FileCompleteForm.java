@@ -0,0 +1,14 @@
+package com.service.api.form;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotBlank;
+
+/**
+ * File a client has uploaded with a presigned URL
+ */
+@Data
+public class FileCompleteForm {
+    @NotBlank(message = "Key can not blank")
+    private String key;
+}
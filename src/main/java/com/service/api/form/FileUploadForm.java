@@ -0,0 +1,23 @@
+package com.service.api.form;
+
+import lombok.Data;
+import org.hibernate.validator.constraints.Length;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+/**
+ * File a client is about to upload straight to storage
+ */
+@Data
+public class FileUploadForm {
+    @NotBlank(message = "Name can not blank")
+    @Length(max = 255, message = "Name must have at most 255 characters")
+    private String name;
+    @NotBlank(message = "Content type can not blank")
+    private String contentType;
+    @NotNull(message = "Size can not null")
+    @Min(1)
+    private Long size;
+}
@@ -0,0 +1,31 @@
+package com.service.api.form;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.validator.constraints.Length;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+
+/**
+ * One user of a bulk update, fields left null are kept
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPatchForm {
+    @NotNull(message = "Id can not null")
+    @Min(1)
+    Long id;
+    @Email
+    @Length(max = 50, message = "Email must have at most 50 characters")
+    String email;
+    @Length(min = 3, max = 50, message = "User must have 3~50 characters")
+    @Pattern(regexp = "^[a-zA-Z0-9_]*$", message = "Username should have alphabets, numbers, underscores")
+    String username;
+}
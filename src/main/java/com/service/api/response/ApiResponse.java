@@ -2,6 +2,7 @@ package com.service.api.response;
 
 import lombok.AllArgsConstructor;
 import lombok.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
@@ -26,6 +27,17 @@ public class ApiResponse extends ResponseEntity<ApiResponse.Payload> {
         super(new Payload(status.value(), message, data), status);
     }
 
+    /**
+     * Create a new {@code ApiResponse} with the given code, message, data, headers, http status.
+     * @param status status code
+     * @param message status code message
+     * @param data data response
+     * @param headers response headers
+     */
+    public ApiResponse(HttpStatus status, String message, Object data, HttpHeaders headers) {
+        super(new Payload(status.value(), message, data), headers, status);
+    }
+
     @Value
     @AllArgsConstructor
     public static class Payload {
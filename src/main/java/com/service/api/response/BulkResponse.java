@@ -0,0 +1,27 @@
+package com.service.api.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class BulkResponse {
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+    public static final String NOT_FOUND = "not_found";
+    public static final String CONFLICT = "conflict";
+
+    private long succeeded;
+    private long failed;
+    // in the order of the request
+    private List<Item> items;
+
+    @Data
+    @AllArgsConstructor
+    public static class Item {
+        private long id;
+        private String status;
+    }
+}
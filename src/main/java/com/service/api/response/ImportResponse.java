@@ -0,0 +1,24 @@
+package com.service.api.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ImportResponse {
+    private long total;
+    private long imported;
+    private long failed;
+    // only the first errors are kept, failed still counts all of them
+    private boolean errorsTruncated;
+    private List<RowError> errors = new ArrayList<>();
+
+    @Data
+    @AllArgsConstructor
+    public static class RowError {
+        private long row;
+        private List<String> messages;
+    }
+}
@@ -8,8 +8,24 @@ import java.util.List;
 @Data
 @Builder
 public class PageResponse {
-    private long pageNo;
+    // null in cursor mode
+    private Long pageNo;
     private long pageSize;
-    private long total;
+    // null when the count was not asked for
+    private Long total;
     private List<?> items;
+    // null on the last page of cursor mode
+    private String nextCursor;
+
+    public static class PageResponseBuilder {
+        public PageResponseBuilder pageNo(long pageNo) {
+            this.pageNo = pageNo;
+            return this;
+        }
+
+        public PageResponseBuilder total(long total) {
+            this.total = total;
+            return this;
+        }
+    }
 }
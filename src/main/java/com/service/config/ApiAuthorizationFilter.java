@@ -1,11 +1,10 @@
 package com.service.config;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.service.util.ApiConst;
+import com.service.util.TokenUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -30,10 +29,14 @@ import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 @Slf4j(topic = "AUTHORIZATION-FILTER")
 public class ApiAuthorizationFilter extends OncePerRequestFilter {
 
-    private String secretKey;
+    private final JwtKeyRing keyRing;
+    private final VerifiedTokenCache tokenCache;
+    private final TokenRevocationList revocationList;
 
-    public ApiAuthorizationFilter(String secretKey) {
-        this.secretKey = secretKey;
+    public ApiAuthorizationFilter(JwtKeyRing keyRing, VerifiedTokenCache tokenCache, TokenRevocationList revocationList) {
+        this.keyRing = keyRing;
+        this.tokenCache = tokenCache;
+        this.revocationList = revocationList;
     }
 
     @Override
@@ -45,13 +48,21 @@ public class ApiAuthorizationFilter extends OncePerRequestFilter {
             if (authorizeHeader != null && authorizeHeader.startsWith("Bearer ")) {
                 try {
                     String token = authorizeHeader.substring("Bearer ".length());
-                    Algorithm algorithm = Algorithm.HMAC256(secretKey.getBytes());
-                    JWTVerifier verifier = JWT.require(algorithm).build();
-                    DecodedJWT decodedJWT = verifier.verify(token);
-                    String username = decodedJWT.getSubject();
-                    String[] roles = decodedJWT.getClaim(ApiConst.USER_ROLE).asArray(String.class);
-                    Collection<SimpleGrantedAuthority> authorities = stream(roles).map(SimpleGrantedAuthority::new).collect(Collectors.toList());
-                    UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(username, null, authorities);
+                    VerifiedTokenCache.Entry verified = tokenCache.get(token);
+                    if (verified == null) {
+                        DecodedJWT decodedJWT = keyRing.verify(token);
+                        String username = decodedJWT.getSubject();
+                        String[] roles = decodedJWT.getClaim(ApiConst.USER_ROLE).asArray(String.class);
+                        Collection<SimpleGrantedAuthority> authorities = stream(roles).map(SimpleGrantedAuthority::new).collect(Collectors.toList());
+                        UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(username, null, authorities);
+                        verified = new VerifiedTokenCache.Entry(authenticationToken, TokenUtil.revocationKey(decodedJWT, token),
+                                TokenUtil.issuedAt(decodedJWT), decodedJWT.getExpiresAt() == null ? 0 : decodedJWT.getExpiresAt().getTime());
+                        tokenCache.put(token, verified);
+                    }
+                    UsernamePasswordAuthenticationToken authenticationToken = verified.getAuthentication();
+                    if (revocationList.isRevoked(verified.getRevocationKey(), authenticationToken.getName(), verified.getIssuedAt())) {
+                        throw new JWTVerificationException(Translator.toLocale("token-revoked"));
+                    }
                     SecurityContextHolder.getContext().setAuthentication(authenticationToken);
                     filterChain.doFilter(request, response);
                 } catch (Exception e) {
@@ -16,7 +16,7 @@ public class ApiLocaleResolver
         extends AcceptHeaderLocaleResolver
         implements WebMvcConfigurer {
 
-    List<Locale> LOCALES = Arrays.asList(
+    public static final List<Locale> LOCALES = Arrays.asList(
             new Locale("en"),
             new Locale("vi"));
 
@@ -18,8 +18,6 @@ import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -38,6 +36,20 @@ public class ApiSecurityConfig extends WebSecurityConfigurerAdapter {
 
     @Value("${jwt.secret}")
     private String secretKey;
+    @Value("${jwt.keys.location}")
+    private String keysLocation;
+    @Value("${jwt.cache.maximum-size}")
+    private long tokenCacheMaximumSize;
+    @Value("${jwt.revocation.expected-tokens}")
+    private long revocationExpectedTokens;
+    @Value("${password.encoder}")
+    private String passwordEncoderId;
+    @Value("${password.bcrypt.strength}")
+    private int bcryptStrength;
+    @Value("${password.hashing.threads}")
+    private int hashingThreads;
+    @Value("${password.hashing.queue-capacity}")
+    private int hashingQueueCapacity;
 
     @Override
     public void configure(AuthenticationManagerBuilder auth) throws Exception {
@@ -45,8 +57,8 @@ public class ApiSecurityConfig extends WebSecurityConfigurerAdapter {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PooledPasswordEncoder passwordEncoder() {
+        return new PooledPasswordEncoder(passwordEncoderId, bcryptStrength, hashingThreads, hashingQueueCapacity);
     }
 
     @Bean
@@ -59,9 +71,10 @@ public class ApiSecurityConfig extends WebSecurityConfigurerAdapter {
     protected void configure(HttpSecurity http) throws Exception {
         http.csrf().disable();
         http.sessionManagement().sessionCreationPolicy(STATELESS);
-        http.authorizeRequests().antMatchers("/auth/**").permitAll();
-        http.authorizeRequests().anyRequest().authenticated();
-        http.addFilterBefore(new ApiAuthorizationFilter(secretKey), UsernamePasswordAuthenticationFilter.class);
+        http.authorizeHttpRequests()
+                .antMatchers("/auth/**").permitAll()
+                .anyRequest().access(permissionEngine());
+        http.addFilterBefore(new ApiAuthorizationFilter(jwtKeyRing(), verifiedTokenCache(), tokenRevocationList()), UsernamePasswordAuthenticationFilter.class);
     }
 
     @Override
@@ -88,6 +101,26 @@ public class ApiSecurityConfig extends WebSecurityConfigurerAdapter {
         return bean;
     }
 
+    @Bean
+    public JwtKeyRing jwtKeyRing() {
+        return new JwtKeyRing(secretKey, keysLocation, verifiedTokenCache());
+    }
+
+    @Bean
+    public PermissionEngine permissionEngine() {
+        return new PermissionEngine();
+    }
+
+    @Bean
+    public VerifiedTokenCache verifiedTokenCache() {
+        return new VerifiedTokenCache(tokenCacheMaximumSize);
+    }
+
+    @Bean
+    public TokenRevocationList tokenRevocationList() {
+        return new TokenRevocationList(revocationExpectedTokens);
+    }
+
     @Bean
     public ModelMapper modelMapper() {
         return new ModelMapper();
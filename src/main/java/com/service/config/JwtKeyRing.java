@@ -0,0 +1,253 @@
+package com.service.config;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Holds every key able to sign or verify our tokens, with the {@link Algorithm} and {@link JWTVerifier} built once per key.
+ * <p>
+ * The HMAC key from {@code jwt.secret} verifies tokens without {@code kid} header. Asymmetric keys are read from
+ * {@code jwt.keys.location}: one {@code <kid>.pem} file per key, holding a PKCS#8 private key and its public key.
+ * The greatest kid signs new tokens, the others still verify tokens issued before rotation. The directory is
+ * scanned again on schedule, so dropping in a new file rotates the keys without restart.
+ */
+@Slf4j(topic = "JWT-KEY-RING")
+public class JwtKeyRing {
+    private static final Pattern PEM_BLOCK = Pattern.compile("-----BEGIN ([A-Z ]+)-----([^-]+)-----END \\1-----");
+    private static final String PEM_EXTENSION = ".pem";
+
+    private final SigningKey secretKey;
+    private final String keysLocation;
+    private final VerifiedTokenCache tokenCache;
+    private final AtomicReference<KeySnapshot> snapshot = new AtomicReference<>();
+
+    public JwtKeyRing(String secret, String keysLocation, VerifiedTokenCache tokenCache) {
+        Algorithm algorithm = Algorithm.HMAC256(secret.getBytes());
+        this.secretKey = new SigningKey(null, algorithm, JWT.require(algorithm).build(), null);
+        this.keysLocation = keysLocation;
+        this.tokenCache = tokenCache;
+        reload();
+    }
+
+    /**
+     * Sign token with the active key
+     *
+     * @param builder token claims
+     * @return signed token
+     */
+    public String sign(JWTCreator.Builder builder) {
+        SigningKey key = snapshot.get().getActive();
+        if (key.getKid() != null) {
+            builder.withKeyId(key.getKid());
+        }
+        return builder.sign(key.getAlgorithm());
+    }
+
+    /**
+     * Verify token with the key named by its kid header
+     *
+     * @param token raw token
+     * @return decoded token
+     * @throws JWTVerificationException when the key is unknown or token is invalid
+     */
+    public DecodedJWT verify(String token) {
+        DecodedJWT decodedJWT = JWT.decode(token);
+        String kid = decodedJWT.getKeyId();
+        SigningKey key = kid == null ? secretKey : snapshot.get().getKeys().get(kid);
+        if (key == null) {
+            throw new JWTVerificationException("Unknown signing key " + kid);
+        }
+        return key.getVerifier().verify(decodedJWT);
+    }
+
+    /**
+     * Public keys as JSON Web Key Set, the HMAC secret is never published
+     *
+     * @return JWK set
+     */
+    public Map<String, Object> jwks() {
+        List<Map<String, Object>> keys = snapshot.get().getKeys().values().stream()
+                .map(SigningKey::getJwk)
+                .collect(Collectors.toList());
+        return Map.of("keys", keys);
+    }
+
+    /**
+     * Scan key directory again and swap keys atomically.
+     * <p>
+     * When the directory or the newest key can not be read, the keys in use are kept, so signing never falls back
+     * to an older key. Before the first successful scan the HMAC secret signs.
+     */
+    @Scheduled(fixedDelayString = "${jwt.keys.reload-interval}", initialDelayString = "${jwt.keys.reload-interval}")
+    public void reload() {
+        TreeMap<String, SigningKey> keys = new TreeMap<>();
+        String failed = null;
+        if (StringUtils.hasText(keysLocation)) {
+            List<Path> pems;
+            try (Stream<Path> files = Files.list(Paths.get(keysLocation))) {
+                pems = files.filter(file -> file.getFileName().toString().endsWith(PEM_EXTENSION)).collect(Collectors.toList());
+            } catch (IOException e) {
+                log.error("Can not read signing keys from {}: {}", keysLocation, e.getMessage());
+                keepPrevious(keys);
+                return;
+            }
+            for (Path file : pems) {
+                try {
+                    SigningKey key = readKey(file);
+                    keys.put(key.getKid(), key);
+                } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+                    log.error("Can not read signing key {}: {}", file, e.getMessage());
+                    String kid = kid(file);
+                    if (failed == null || kid.compareTo(failed) > 0) {
+                        failed = kid;
+                    }
+                }
+            }
+        }
+        if (failed != null && (keys.isEmpty() || failed.compareTo(keys.lastKey()) > 0)) {
+            log.error("Newest signing key {} can not be read", failed);
+            keepPrevious(keys);
+            return;
+        }
+
+        SigningKey active = keys.isEmpty() ? secretKey : keys.lastEntry().getValue();
+        KeySnapshot previous = snapshot.getAndSet(new KeySnapshot(Collections.unmodifiableMap(keys), active));
+        if (previous == null) {
+            log.info("Loaded {} signing keys, active key is {}", keys.size(), active.getKid());
+        } else if (!previous.getKeys().keySet().equals(keys.keySet())) {
+            log.info("Signing keys changed from {} to {}, active key is {}", previous.getKeys().keySet(), keys.keySet(), active.getKid());
+            if (!keys.keySet().containsAll(previous.getKeys().keySet())) {
+                // tokens signed by a removed key must not be served from cache anymore
+                tokenCache.invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Keep the keys in use after a failed scan, or sign with the HMAC secret when nothing was loaded yet
+     *
+     * @param keys keys read by the failed scan, still able to verify
+     */
+    private void keepPrevious(Map<String, SigningKey> keys) {
+        if (snapshot.compareAndSet(null, new KeySnapshot(Collections.unmodifiableMap(keys), secretKey))) {
+            log.warn("No active signing key could be loaded, signing with jwt.secret");
+        } else {
+            log.warn("Keeping signing keys {}", snapshot.get().getKeys().keySet());
+        }
+    }
+
+    private static String kid(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.substring(0, fileName.length() - PEM_EXTENSION.length());
+    }
+
+    private static SigningKey readKey(Path file) throws IOException, GeneralSecurityException {
+        String kid = kid(file);
+
+        Map<String, byte[]> blocks = new HashMap<>();
+        Matcher matcher = PEM_BLOCK.matcher(Files.readString(file));
+        while (matcher.find()) {
+            blocks.put(matcher.group(1), Base64.getMimeDecoder().decode(matcher.group(2)));
+        }
+        if (!blocks.containsKey("PRIVATE KEY") || !blocks.containsKey("PUBLIC KEY")) {
+            throw new IllegalArgumentException("PRIVATE KEY and PUBLIC KEY blocks are required");
+        }
+        PKCS8EncodedKeySpec privateSpec = new PKCS8EncodedKeySpec(blocks.get("PRIVATE KEY"));
+        X509EncodedKeySpec publicSpec = new X509EncodedKeySpec(blocks.get("PUBLIC KEY"));
+
+        Algorithm algorithm;
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        try {
+            KeyFactory factory = KeyFactory.getInstance("EC");
+            ECPrivateKey privateKey = (ECPrivateKey) factory.generatePrivate(privateSpec);
+            ECPublicKey publicKey = (ECPublicKey) factory.generatePublic(publicSpec);
+            int fieldSize = publicKey.getParams().getCurve().getField().getFieldSize();
+            int length = (fieldSize + 7) / 8;
+            switch (fieldSize) {
+                case 256:
+                    algorithm = Algorithm.ECDSA256(publicKey, privateKey);
+                    break;
+                case 384:
+                    algorithm = Algorithm.ECDSA384(publicKey, privateKey);
+                    break;
+                case 521:
+                    algorithm = Algorithm.ECDSA512(publicKey, privateKey);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported curve size " + fieldSize);
+            }
+            jwk.put("kty", "EC");
+            jwk.put("crv", "P-" + fieldSize);
+            jwk.put("x", base64Url(publicKey.getW().getAffineX(), length));
+            jwk.put("y", base64Url(publicKey.getW().getAffineY(), length));
+        } catch (InvalidKeySpecException e) {
+            KeyFactory factory = KeyFactory.getInstance("RSA");
+            RSAPrivateKey privateKey = (RSAPrivateKey) factory.generatePrivate(privateSpec);
+            RSAPublicKey publicKey = (RSAPublicKey) factory.generatePublic(publicSpec);
+            algorithm = Algorithm.RSA256(publicKey, privateKey);
+            jwk.put("kty", "RSA");
+            jwk.put("n", base64Url(publicKey.getModulus(), 0));
+            jwk.put("e", base64Url(publicKey.getPublicExponent(), 0));
+        }
+        jwk.put("kid", kid);
+        jwk.put("use", "sig");
+        jwk.put("alg", algorithm.getName());
+
+        return new SigningKey(kid, algorithm, JWT.require(algorithm).build(), Collections.unmodifiableMap(jwk));
+    }
+
+    /**
+     * Unsigned big-endian value, left padded to length bytes as JWK requires for EC coordinates
+     */
+    private static String base64Url(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        int offset = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        int size = Math.max(bytes.length - offset, length);
+        byte[] unsigned = new byte[size];
+        System.arraycopy(bytes, offset, unsigned, size - (bytes.length - offset), bytes.length - offset);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(unsigned);
+    }
+
+    @Value
+    private static class SigningKey {
+        String kid;
+        Algorithm algorithm;
+        JWTVerifier verifier;
+        Map<String, Object> jwk;
+    }
+
+    @Value
+    private static class KeySnapshot {
+        Map<String, SigningKey> keys;
+        SigningKey active;
+    }
+}
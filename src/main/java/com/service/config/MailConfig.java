@@ -0,0 +1,44 @@
+package com.service.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+@Configuration
+@EnableConfigurationProperties(MailProperties.class)
+public class MailConfig {
+    @Value("${mail.pool.size}")
+    private int poolSize;
+    @Value("${mail.pool.idle-timeout}")
+    private long idleTimeout;
+    @Value("${mail.pool.borrow-timeout}")
+    private long borrowTimeout;
+    @Value("${mail.pool.max-messages}")
+    private int maxMessages;
+
+    /**
+     * Replaces the sender of Spring Boot, configured from the same spring.mail properties
+     */
+    @Bean
+    public PooledMailSender mailSender(MailProperties properties) {
+        PooledMailSender sender = new PooledMailSender(poolSize, idleTimeout, borrowTimeout, maxMessages);
+        sender.setHost(properties.getHost());
+        if (properties.getPort() != null) {
+            sender.setPort(properties.getPort());
+        }
+        sender.setUsername(properties.getUsername());
+        sender.setPassword(properties.getPassword());
+        sender.setProtocol(properties.getProtocol());
+        sender.setDefaultEncoding(properties.getDefaultEncoding() != null
+                ? properties.getDefaultEncoding().name() : StandardCharsets.UTF_8.name());
+        Properties javaMailProperties = new Properties();
+        javaMailProperties.putAll(properties.getProperties());
+        sender.setJavaMailProperties(javaMailProperties);
+        return sender;
+    }
+}
@@ -0,0 +1,47 @@
+package com.service.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Authorizes every authenticated request against the compiled activity matrix, without database access.
+ * Requests are matched by their decoded path, the one handlers are mapped by, and requests to activities that are
+ * not declared in tbl_activities are denied.
+ */
+@Slf4j(topic = "PERMISSION-ENGINE")
+public class PermissionEngine implements AuthorizationManager<RequestAuthorizationContext> {
+    private static final UrlPathHelper URL_PATH_HELPER = UrlPathHelper.defaultInstance;
+
+    private final AtomicReference<PermissionSnapshot> snapshot = new AtomicReference<>(PermissionSnapshot.EMPTY);
+
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        Authentication auth = authentication.get();
+        if (auth == null || !auth.isAuthenticated() || auth instanceof AnonymousAuthenticationToken) {
+            return new AuthorizationDecision(false);
+        }
+        HttpServletRequest request = context.getRequest();
+        // decoded, without ;params, so %75sers or users;x=1 can not slip past the activity they are dispatched to
+        String path = URL_PATH_HELPER.getContextPath(request) + URL_PATH_HELPER.getPathWithinApplication(request);
+        return new AuthorizationDecision(snapshot.get().isAllowed(request.getMethod(), path, auth.getAuthorities()));
+    }
+
+    /**
+     * Replace compiled permissions atomically
+     *
+     * @param permissions new snapshot
+     */
+    public void swap(PermissionSnapshot permissions) {
+        snapshot.set(permissions);
+        log.info("Permission snapshot swapped, {} activities are enforced", permissions.getActivities());
+    }
+}
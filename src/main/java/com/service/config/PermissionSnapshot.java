@@ -0,0 +1,137 @@
+package com.service.config;
+
+import com.service.dto.ActivityPermissionDTO;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.*;
+
+/**
+ * Immutable compiled form of tbl_activities / tbl_role_permission_activities.
+ * <p>
+ * Activity URLs are stored in a trie of path segments where {@code {param}} segments match any value.
+ * Each node keeps, per HTTP method, the bitset of roles allowed to call it, so a check walks the path once
+ * and intersects two bitsets.
+ */
+public final class PermissionSnapshot {
+    public static final PermissionSnapshot EMPTY = compile(Collections.emptyList());
+
+    private static final int METHODS = HttpMethod.values().length;
+
+    private final Node root;
+    private final Map<String, Integer> roleIndex;
+    private final int activities;
+
+    private PermissionSnapshot(Node root, Map<String, Integer> roleIndex, int activities) {
+        this.root = root;
+        this.roleIndex = roleIndex;
+        this.activities = activities;
+    }
+
+    /**
+     * Compile activities granted to roles
+     *
+     * @param permissions rows of method, url and role
+     * @return compiled snapshot
+     */
+    public static PermissionSnapshot compile(Collection<ActivityPermissionDTO> permissions) {
+        Map<String, Integer> roleIndex = new HashMap<>();
+        Node root = new Node();
+        Set<String> activities = new HashSet<>();
+        for (ActivityPermissionDTO permission : permissions) {
+            HttpMethod method = HttpMethod.resolve(permission.getMethod());
+            if (method == null) {
+                continue;
+            }
+            int role = roleIndex.computeIfAbsent(permission.getRole(), k -> roleIndex.size());
+
+            Node node = root;
+            for (String segment : segments(permission.getUrl())) {
+                node = isVariable(segment) ? node.variable() : node.literal(segment);
+            }
+            node.allow(method, role);
+            activities.add(method + " " + permission.getUrl());
+        }
+        return new PermissionSnapshot(root, Collections.unmodifiableMap(roleIndex), activities.size());
+    }
+
+    /**
+     * Check whether authorities are allowed to call an url
+     *
+     * @param method      http method
+     * @param path        decoded request path, including context path
+     * @param authorities user authorities
+     * @return true only when the activity is declared and one of the roles is granted
+     */
+    public boolean isAllowed(String method, String path, Collection<? extends GrantedAuthority> authorities) {
+        HttpMethod httpMethod = HttpMethod.resolve(method);
+        if (httpMethod == null) {
+            return false;
+        }
+        if (httpMethod == HttpMethod.HEAD) {
+            httpMethod = HttpMethod.GET;
+        }
+
+        BitSet allowed = find(root, segments(path), 0, httpMethod.ordinal());
+        if (allowed == null) {
+            return false;
+        }
+        for (GrantedAuthority authority : authorities) {
+            Integer role = roleIndex.get(authority.getAuthority());
+            if (role != null && allowed.get(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getActivities() {
+        return activities;
+    }
+
+    private static BitSet find(Node node, String[] segments, int index, int method) {
+        if (index == segments.length) {
+            return node.allowed[method];
+        }
+        Node literal = node.literals.get(segments[index]);
+        if (literal != null) {
+            BitSet allowed = find(literal, segments, index + 1, method);
+            if (allowed != null) {
+                return allowed;
+            }
+        }
+        return node.variable == null ? null : find(node.variable, segments, index + 1, method);
+    }
+
+    private static String[] segments(String url) {
+        return Arrays.stream(url.split("/")).filter(segment -> !segment.isEmpty()).toArray(String[]::new);
+    }
+
+    private static boolean isVariable(String segment) {
+        return segment.startsWith("{") && segment.endsWith("}");
+    }
+
+    private static final class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private final BitSet[] allowed = new BitSet[METHODS];
+        private Node variable;
+
+        private Node literal(String segment) {
+            return literals.computeIfAbsent(segment, k -> new Node());
+        }
+
+        private Node variable() {
+            if (variable == null) {
+                variable = new Node();
+            }
+            return variable;
+        }
+
+        private void allow(HttpMethod method, int role) {
+            if (allowed[method.ordinal()] == null) {
+                allowed[method.ordinal()] = new BitSet();
+            }
+            allowed[method.ordinal()].set(role);
+        }
+    }
+}
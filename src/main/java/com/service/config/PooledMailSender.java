@@ -0,0 +1,198 @@
+package com.service.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link JavaMailSenderImpl} keeping its SMTP connections open between sends. A send borrows a connected
+ * transport from the pool and gives it back afterwards, so the TLS handshake and authentication are paid once
+ * per connection instead of once per message.
+ * <p>
+ * At most {@code size} connections are open, a send waits for a free one up to {@code borrowTimeout}.
+ * Connections idle for longer than {@code idleTimeout} are closed before the server drops them, and a connection is
+ * retired after {@code maxMessages} messages since servers cap how many they accept per connection.
+ */
+@Slf4j(topic = "MAIL-SENDER")
+public class PooledMailSender extends JavaMailSenderImpl implements MeterBinder, DisposableBean {
+    private final int size;
+    private final long idleTimeout;
+    private final long borrowTimeout;
+    private final int maxMessages;
+    private final BlockingQueue<PooledTransport> idle = new LinkedBlockingQueue<>();
+    private final Semaphore permits;
+    private final AtomicLong opened = new AtomicLong();
+
+    public PooledMailSender(int size, long idleTimeout, long borrowTimeout, int maxMessages) {
+        this.size = size;
+        this.idleTimeout = idleTimeout;
+        this.borrowTimeout = borrowTimeout;
+        this.maxMessages = maxMessages;
+        this.permits = new Semaphore(size, true);
+    }
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) {
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        PooledTransport transport;
+        try {
+            transport = borrow();
+        } catch (MessagingException e) {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                failedMessages.put(originalMessages != null ? originalMessages[i] : mimeMessages[i], e);
+            }
+            throw new MailSendException("Mail server connection failed", e, failedMessages);
+        }
+
+        boolean reconnected = false;
+        try {
+            for (int i = 0; i < mimeMessages.length; i++) {
+                Object original = originalMessages != null ? originalMessages[i] : mimeMessages[i];
+                if (transport == null) {
+                    failedMessages.put(original, new MessagingException("Mail server connection lost"));
+                    continue;
+                }
+                try {
+                    send(transport, mimeMessages[i]);
+                } catch (SendFailedException e) {
+                    // rejected recipients, the connection is still usable
+                    failedMessages.put(original, e);
+                } catch (MessagingException e) {
+                    close(transport);
+                    transport = null;
+                    // a pooled connection may have been dropped by the server, retry once on a new one
+                    if (!reconnected) {
+                        reconnected = true;
+                        try {
+                            transport = connect();
+                            send(transport, mimeMessages[i]);
+                            continue;
+                        } catch (MessagingException retry) {
+                            e = retry;
+                        }
+                    }
+                    failedMessages.put(original, e);
+                }
+            }
+        } finally {
+            release(transport);
+        }
+
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("mail.pool.connections", idle, BlockingQueue::size).tag("state", "idle").register(registry);
+        Gauge.builder("mail.pool.connections", permits, p -> size - p.availablePermits()).tag("state", "active").register(registry);
+        Gauge.builder("mail.pool.opened", opened, AtomicLong::get)
+                .description("SMTP connections opened since start")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        PooledTransport transport;
+        while ((transport = idle.poll()) != null) {
+            close(transport);
+        }
+    }
+
+    private void send(PooledTransport transport, MimeMessage mimeMessage) throws MessagingException {
+        if (mimeMessage.getSentDate() == null) {
+            mimeMessage.setSentDate(new Date());
+        }
+        String messageId = mimeMessage.getMessageID();
+        mimeMessage.saveChanges();
+        if (messageId != null) {
+            // preserve explicitly specified message id
+            mimeMessage.setHeader("Message-ID", messageId);
+        }
+        Address[] addresses = mimeMessage.getAllRecipients();
+        transport.transport.sendMessage(mimeMessage, addresses != null ? addresses : new Address[0]);
+        transport.messages++;
+    }
+
+    private PooledTransport borrow() throws MessagingException {
+        try {
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                throw new MessagingException("No mail server connection available");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for a mail server connection");
+        }
+
+        try {
+            PooledTransport transport;
+            long now = System.currentTimeMillis();
+            while ((transport = idle.poll()) != null) {
+                if (now - transport.lastUsed < idleTimeout) {
+                    return transport;
+                }
+                close(transport);
+            }
+            return connect();
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledTransport connect() throws MessagingException {
+        Transport transport = connectTransport();
+        opened.incrementAndGet();
+        log.info("Opened mail server connection to {}:{}", getHost(), getPort());
+        return new PooledTransport(transport);
+    }
+
+    private void release(PooledTransport transport) {
+        if (transport != null) {
+            if (transport.messages >= maxMessages) {
+                close(transport);
+            } else {
+                transport.lastUsed = System.currentTimeMillis();
+                idle.offer(transport);
+            }
+        }
+        permits.release();
+    }
+
+    private static void close(PooledTransport transport) {
+        try {
+            transport.transport.close();
+        } catch (MessagingException e) {
+            log.debug("Can not close mail server connection: {}", e.getMessage());
+        }
+    }
+
+    private static class PooledTransport {
+        private final Transport transport;
+        private int messages;
+        private long lastUsed = System.currentTimeMillis();
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.service.config;
+
+import com.service.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Runs password hashing on a bounded pool sized to the CPU, so a burst of logins can not starve request threads.
+ * When the queue is full the caller fails fast with {@link ServiceUnavailableException} instead of waiting.
+ * <p>
+ * New hashes use the configured encoder id, hashes of another encoder or a lower cost are reported by
+ * {@link #upgradeEncoding(String)} and re-hashed by Spring Security on the next successful login.
+ */
+@Slf4j(topic = "PASSWORD-ENCODER")
+public class PooledPasswordEncoder implements PasswordEncoder, MeterBinder, DisposableBean {
+    private final DelegatingPasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+
+    public PooledPasswordEncoder(String encoderId, int bcryptStrength, int threads, int queueCapacity) {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+        this.delegate = new DelegatingPasswordEncoder(encoderId, Map.of(
+                "bcrypt", bcrypt,
+                "argon2", new Argon2PasswordEncoder()));
+        // hashes stored before encoder ids were used are plain bcrypt
+        this.delegate.setDefaultPasswordEncoderForMatches(bcrypt);
+
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("password-hashing-"));
+        this.queueCapacity = queueCapacity;
+        this.encodeTimer = Timer.builder("password.hashing").tag("operation", "encode").register(meterRegistry);
+        this.matchesTimer = Timer.builder("password.hashing").tag("operation", "matches").register(meterRegistry);
+        log.info("Password hashing uses {} with {} threads", encoderId, poolSize);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(() -> encodeTimer.recordCallable(() -> delegate.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(() -> matchesTimer.recordCallable(() -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    /**
+     * Hash passwords of a bulk job in parallel. Half of the queue stays free for logins: beyond it the caller
+     * hashes the password itself, which also slows the bulk job down to what the pool can take.
+     *
+     * @param rawPasswords raw passwords
+     * @return hashes in the same order
+     */
+    public List<String> encodeAll(List<? extends CharSequence> rawPasswords) {
+        List<Future<String>> futures = new ArrayList<>(rawPasswords.size());
+        for (CharSequence rawPassword : rawPasswords) {
+            Callable<String> task = () -> encodeTimer.recordCallable(() -> delegate.encode(rawPassword));
+            Future<String> future = null;
+            if (executor.getQueue().remainingCapacity() > queueCapacity / 2) {
+                try {
+                    future = executor.submit(task);
+                } catch (RejectedExecutionException e) {
+                    // run below
+                }
+            }
+            if (future == null) {
+                FutureTask<String> callerRuns = new FutureTask<>(task);
+                callerRuns.run();
+                future = callerRuns;
+            }
+            futures.add(future);
+        }
+
+        List<String> hashes = new ArrayList<>(futures.size());
+        for (Future<String> future : futures) {
+            hashes.add(await(future));
+        }
+        return hashes;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry.add(registry);
+        new ExecutorServiceMetrics(executor, "passwordHashing", Tags.empty()).bindTo(registry);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private <T> T execute(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("Password hashing queue is full");
+            throw new ServiceUnavailableException(Translator.toLocale("password-hashing-busy"));
+        }
+        return await(future);
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
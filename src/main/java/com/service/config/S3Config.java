@@ -0,0 +1,34 @@
+package com.service.config;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+@Configuration
+public class S3Config {
+    @Value("${cloud.aws.region.static}")
+    private String region;
+    @Value("${cloud.aws.s3.endpoint:}")
+    private String endpoint;
+
+    /**
+     * Replaces the client of Spring Cloud AWS, which registers its own only when there is no amazonS3 bean.
+     * With cloud.aws.s3.endpoint set, requests go to that S3 compatible server (e.g. MinIO) with path style URLs.
+     */
+    @Bean
+    public AmazonS3 amazonS3(AWSCredentialsProvider credentialsProvider) {
+        AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard().withCredentials(credentialsProvider);
+        if (StringUtils.hasText(endpoint)) {
+            builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
+                    .withPathStyleAccessEnabled(true);
+        } else {
+            builder.withRegion(region);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,119 @@
+package com.service.config;
+
+import com.service.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Revoked tokens and per-user "not before" timestamps, checked on every authenticated request.
+ * <p>
+ * Revoked token keys go into a Bloom filter in front of an exact set, so a token that was never revoked is
+ * answered by a few bit probes without touching the set. The per-user map is only probed when it is not empty.
+ * Both are filled from tbl_revoked_tokens and tbl_user_revocations by the revocation service, a full
+ * {@link #replace(Map, Map)} drops expired entries and sizes a fresh filter.
+ */
+@Slf4j(topic = "TOKEN-REVOCATION")
+public class TokenRevocationList implements MeterBinder {
+    private static final double FALSE_POSITIVE_RATE = 0.001;
+
+    private final long expectedTokens;
+    private final AtomicReference<Revocations> revocations;
+    private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+    private final Counter rejected;
+
+    public TokenRevocationList(long expectedTokens) {
+        this.expectedTokens = expectedTokens;
+        this.revocations = new AtomicReference<>(new Revocations(expectedTokens));
+        this.rejected = Counter.builder("token.revocation.rejected").register(meterRegistry);
+    }
+
+    /**
+     * Check whether a token was revoked
+     *
+     * @param revocationKey jti of token, or its digest when token has no jti
+     * @param username      token subject
+     * @param issuedAt      issued at in millis, 0 when token has no iat
+     * @return true when token or all sessions of its user were revoked
+     */
+    public boolean isRevoked(String revocationKey, String username, long issuedAt) {
+        Revocations current = revocations.get();
+        boolean revoked = false;
+        if (!current.users.isEmpty() && username != null) {
+            Long notBefore = current.users.get(username);
+            // iat has second precision, a token issued in the same second as the revocation is revoked too
+            revoked = notBefore != null && issuedAt <= notBefore;
+        }
+        if (!revoked && revocationKey != null && current.filter.mightContain(revocationKey)) {
+            revoked = current.tokens.containsKey(revocationKey);
+        }
+        if (revoked) {
+            rejected.increment();
+        }
+        return revoked;
+    }
+
+    /**
+     * Revoke one token
+     *
+     * @param revocationKey jti of token, or its digest when token has no jti
+     * @param expiresAt     expiry of token in millis, the entry is dropped after it
+     */
+    public void revoke(String revocationKey, long expiresAt) {
+        Revocations current = revocations.get();
+        // exact set first, a concurrent reader that sees the filter bit must find the key
+        current.tokens.put(revocationKey, expiresAt);
+        current.filter.put(revocationKey);
+    }
+
+    /**
+     * Revoke every token of a user issued up to a moment
+     *
+     * @param username   username
+     * @param notBefore  tokens issued at or before this millis are revoked
+     */
+    public void revokeUser(String username, long notBefore) {
+        revocations.get().users.merge(username, notBefore, Math::max);
+    }
+
+    /**
+     * Swap in the full revocation lists, expired tokens must already be left out
+     *
+     * @param tokens revoked token keys with expiry in millis
+     * @param users  not before millis of users
+     */
+    public void replace(Map<String, Long> tokens, Map<String, Long> users) {
+        Revocations fresh = new Revocations(Math.max(expectedTokens, tokens.size() * 2L));
+        tokens.forEach((key, expiresAt) -> {
+            fresh.tokens.put(key, expiresAt);
+            fresh.filter.put(key);
+        });
+        fresh.users.putAll(users);
+        revocations.set(fresh);
+        log.info("Loaded {} revoked tokens and {} revoked users", tokens.size(), users.size());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry.add(registry);
+        Gauge.builder("token.revocation.size", revocations, r -> r.get().tokens.size()).tag("type", "token").register(registry);
+        Gauge.builder("token.revocation.size", revocations, r -> r.get().users.size()).tag("type", "user").register(registry);
+    }
+
+    private static class Revocations {
+        private final BloomFilter filter;
+        private final Map<String, Long> tokens = new ConcurrentHashMap<>();
+        private final Map<String, Long> users = new ConcurrentHashMap<>();
+
+        private Revocations(long expectedTokens) {
+            this.filter = new BloomFilter(expectedTokens, FALSE_POSITIVE_RATE);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.service.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.service.util.TokenUtil.digest;
+
+/**
+ * Bounded cache of access tokens that already passed signature verification.
+ * Entries are keyed by a SHA-256 digest of the raw token and expire together with the token itself,
+ * so a repeated request skips the HMAC check, the JSON decoding and the authorities mapping.
+ */
+@Slf4j(topic = "TOKEN-CACHE")
+public class VerifiedTokenCache implements MeterBinder {
+    private static final String CACHE_NAME = "verifiedTokens";
+
+    private final Cache<String, Entry> cache;
+
+    public VerifiedTokenCache(long maximumSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get a token verified before
+     *
+     * @param token raw access token
+     * @return verified token or null when token is not cached
+     */
+    public Entry get(String token) {
+        return cache.getIfPresent(digest(token));
+    }
+
+    /**
+     * Keep a verified token until it expires
+     *
+     * @param token raw access token
+     * @param entry authentication and claims needed by the revocation check
+     */
+    public void put(String token, Entry entry) {
+        if (entry.getExpiresAt() <= System.currentTimeMillis()) {
+            return;
+        }
+        cache.put(digest(token), entry);
+    }
+
+    /**
+     * Remove all verified tokens, e.g. when signing keys were changed
+     */
+    public void invalidateAll() {
+        log.info("Invalidating all verified tokens");
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    @Value
+    public static class Entry {
+        UsernamePasswordAuthenticationToken authentication;
+        // jti, or token digest for tokens issued without jti
+        String revocationKey;
+        long issuedAt;
+        long expiresAt;
+    }
+
+    private static class TokenExpiry implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(String key, Entry entry, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, entry.getExpiresAt() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
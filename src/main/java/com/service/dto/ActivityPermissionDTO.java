@@ -0,0 +1,12 @@
+package com.service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ActivityPermissionDTO {
+    private String method;
+    private String url;
+    private String role;
+}
@@ -6,6 +6,9 @@ import java.io.Serializable;
 
 @Data
 public class FileDTO implements Serializable {
+    private Long id;
     private String name;
     private String url;
+    private String contentType;
+    private Long size;
 }
@@ -0,0 +1,21 @@
+package com.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+@Data
+@Builder
+public class MailJobDTO implements Serializable {
+    private String id;
+    private long total;
+    private long sent;
+    private long failed;
+    private boolean done;
+    private Date createdDate;
+    // first errors only, failed counts all of them
+    private List<String> errors;
+}
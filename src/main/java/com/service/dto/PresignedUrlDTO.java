@@ -0,0 +1,22 @@
+package com.service.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * URL granting one request on one object until it expires
+ */
+@Data
+@Builder
+public class PresignedUrlDTO implements Serializable {
+    private String key;
+    private String method;
+    private String url;
+    // headers the request must send with exactly these values, they are part of the signature
+    private Map<String, String> headers;
+    private Date expiredDate;
+}
@@ -3,14 +3,22 @@ package com.service.dto;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
+import java.util.Date;
 
+/**
+ * User as listed, only the requested fields are set and the others are left out of the response
+ */
 @Data
 @Builder
+@NoArgsConstructor
 @AllArgsConstructor
 public class UserDTO implements Serializable {
+    private Long id;
     private String username;
-    private String password;
-
+    private String email;
+    private Date createdDate;
+    private Date updatedDate;
 }
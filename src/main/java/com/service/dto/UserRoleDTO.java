@@ -0,0 +1,7 @@
+package com.service.dto;
+
+public interface UserRoleDTO {
+    String getUsername();
+
+    String getRole();
+}
@@ -0,0 +1,9 @@
+package com.service.dto;
+
+import java.util.Date;
+
+public interface UserVersionDTO {
+    long getVersion();
+
+    Date getUpdatedDate();
+}
@@ -6,6 +6,7 @@ import org.springframework.context.support.DefaultMessageSourceResolvable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -106,6 +107,88 @@ public class ApiExceptionHandler extends ResponseEntityExceptionHandler {
         return error;
     }
 
+    /**
+     * 400 BAD_REQUEST: Handle exception when request parameters can not be understood
+     *
+     * @param e
+     * @param request
+     * @return
+     */
+    @ResponseStatus(BAD_REQUEST)
+    @ExceptionHandler(BadRequestException.class)
+    public Error handleBadRequestException(BadRequestException e, WebRequest request) {
+        Error error = new Error();
+        error.setTimestamp(new Date());
+        error.setPath(request.getDescription(false).replace("uri=", ""));
+        error.setStatus(BAD_REQUEST.value());
+        error.setError(BAD_REQUEST.getReasonPhrase());
+        error.setMessages(e.getMessage());
+
+        return error;
+    }
+
+    /**
+     * 409 CONFLICT: Handle exception when resource was changed by someone else in the meantime
+     *
+     * @param e
+     * @param request
+     * @return
+     */
+    @ResponseStatus(CONFLICT)
+    @ExceptionHandler({ConflictException.class, ObjectOptimisticLockingFailureException.class})
+    public Error handleConflictException(RuntimeException e, WebRequest request) {
+        Error error = new Error();
+        error.setTimestamp(new Date());
+        error.setPath(request.getDescription(false).replace("uri=", ""));
+        error.setStatus(CONFLICT.value());
+        error.setError(CONFLICT.getReasonPhrase());
+        error.setMessages(e instanceof ConflictException ? e.getMessage() : Translator.toLocale("user-version-conflict"));
+
+        return error;
+    }
+
+    /**
+     * 429 TOO_MANY_REQUESTS: Handle exception when client sent too many requests
+     *
+     * @param e
+     * @param request
+     * @return
+     */
+    @ResponseStatus(TOO_MANY_REQUESTS)
+    @ExceptionHandler(TooManyRequestsException.class)
+    public Error handleTooManyRequestsException(TooManyRequestsException e, WebRequest request, HttpServletResponse response) {
+        Error error = new Error();
+        error.setTimestamp(new Date());
+        error.setPath(request.getDescription(false).replace("uri=", ""));
+        error.setStatus(TOO_MANY_REQUESTS.value());
+        error.setError(TOO_MANY_REQUESTS.getReasonPhrase());
+        error.setMessages(e.getMessage());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+
+        return error;
+    }
+
+    /**
+     * 503 SERVICE_UNAVAILABLE: Handle exception when request is rejected to protect the server
+     *
+     * @param e
+     * @param request
+     * @return
+     */
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public Error handleServiceUnavailableException(ServiceUnavailableException e, WebRequest request, HttpServletResponse response) {
+        Error error = new Error();
+        error.setTimestamp(new Date());
+        error.setPath(request.getDescription(false).replace("uri=", ""));
+        error.setStatus(SERVICE_UNAVAILABLE.value());
+        error.setError(SERVICE_UNAVAILABLE.getReasonPhrase());
+        error.setMessages(e.getMessage());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+
+        return error;
+    }
+
     /**
      * Handle exception when internal server error
      *
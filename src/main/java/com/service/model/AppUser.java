@@ -1,5 +1,6 @@
 package com.service.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,7 +14,7 @@ import java.util.Date;
 @Table(name = "tbl_users")
 @AllArgsConstructor
 @NoArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 @Data
 public class AppUser {
     @Id
@@ -26,6 +27,8 @@ public class AppUser {
     @Column(name = "username")
     private String username;
 
+    // the hash is never rendered in a response
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     @Column(name = "password")
     private String password;
 
@@ -36,4 +39,23 @@ public class AppUser {
     @Column(name = "updated_date")
     @Temporal(TemporalType.TIMESTAMP)
     private Date updatedDate;
+
+    @Version
+    @Column(name = "version")
+    private Long version;
+
+    @PrePersist
+    void prePersist() {
+        Date now = new Date();
+        if (createdDate == null) {
+            createdDate = now;
+        }
+        updatedDate = now;
+    }
+
+    // validators of conditional GETs are derived from updated_date, so every write must move it
+    @PreUpdate
+    void preUpdate() {
+        updatedDate = new Date();
+    }
 }
@@ -0,0 +1,22 @@
+package com.service.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Authenticated user that keeps its id, so issuing tokens after login needs no second lookup by username
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+public class AppUserDetails extends User {
+    private final long id;
+
+    public AppUserDetails(long id, String username, String password, Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, authorities);
+        this.id = id;
+    }
+}
@@ -18,12 +18,18 @@ public class Token {
     @GeneratedValue(strategy = GenerationType.AUTO)
     private long id;
 
-    @OneToOne
+    @ManyToOne
     @JoinColumn(name = "user_id", referencedColumnName = "id")
     private AppUser user;
 
-    @Column(name = "token", nullable = false, unique = true)
-    private String token;
+    @Column(name = "session_id", unique = true)
+    private String sessionId;
+
+    @Column(name = "token_digest", unique = true)
+    private String tokenDigest;
+
+    @Column(name = "revocation_key")
+    private String revocationKey;
 
     @Column(name = "expiry_date")
     @Temporal(TemporalType.TIMESTAMP)
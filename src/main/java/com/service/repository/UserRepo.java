@@ -1,26 +1,38 @@
 package com.service.repository;
 
+import com.service.dto.UserRoleDTO;
+import com.service.dto.UserVersionDTO;
 import com.service.model.AppUser;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface UserRepo extends PagingAndSortingRepository<AppUser, Long> {
+public interface UserRepo extends PagingAndSortingRepository<AppUser, Long>, UserRepoCustom {
     AppUser findByUsername(String username);
 
     AppUser findByEmail(String email);
 
-    @Query(value = "FROM AppUser u WHERE LOWER(u.username) LIKE LOWER(:keyword) ORDER BY u.id")
-    Page<AppUser> searchByName(String keyword, Pageable pageable);
+    @Query(value = "SELECT u.version AS \"version\", u.updated_date AS \"updatedDate\" FROM tbl_users u WHERE u.id = :id", nativeQuery = true)
+    Optional<UserVersionDTO> findVersionById(long id);
+
+    @Query(value = "SELECT COUNT(*) FROM tbl_users u " +
+            "WHERE u.username ILIKE :pattern OR u.email ILIKE :pattern OR u.username % :keyword OR u.email % :keyword",
+            nativeQuery = true)
+    long countSearch(String keyword, String pattern);
 
     @Query(value = "SELECT DISTINCT r.name FROM tbl_role_permission_activities rpa " +
             "INNER JOIN tbl_roles r ON rpa.role_id = r.id " +
             "INNER JOIN tbl_user_roles usr ON usr.role_id = r.id " +
             "WHERE usr.user_id = (SELECT u.id FROM tbl_users u WHERE u.username = :username)", nativeQuery = true)
     List<String> findRoleByUsername(String username);
+
+    @Query(value = "SELECT DISTINCT u.username AS username, r.name AS role FROM tbl_role_permission_activities rpa " +
+            "INNER JOIN tbl_roles r ON rpa.role_id = r.id " +
+            "INNER JOIN tbl_user_roles usr ON usr.role_id = r.id " +
+            "INNER JOIN tbl_users u ON u.id = usr.user_id", nativeQuery = true)
+    List<UserRoleDTO> findAllUserRoles();
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.service.repository;
+
+import com.service.dto.UserDTO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Listing queries selecting only the requested columns into {@link UserDTO}, no entity is loaded or managed
+ */
+public interface UserRepoCustom {
+    /**
+     * Fields of {@link UserDTO} that can be requested, with their column
+     */
+    Map<String, String> FIELD_COLUMNS = Map.of(
+            "id", "u.id",
+            "username", "u.username",
+            "email", "u.email",
+            "createdDate", "u.created_date",
+            "updatedDate", "u.updated_date");
+
+    /**
+     * Users ordered by id
+     *
+     * @param fields requested fields
+     * @param offset rows to skip
+     * @param limit  maximum rows
+     * @return users
+     */
+    List<UserDTO> findProjected(Set<String> fields, long offset, int limit);
+
+    /**
+     * Users whose username or email contains pattern or looks like keyword, best matches first
+     *
+     * @param fields  requested fields
+     * @param keyword search keyword
+     * @param pattern ILIKE pattern of keyword
+     * @param offset  rows to skip
+     * @param limit   maximum rows
+     * @return users
+     */
+    List<UserDTO> searchProjected(Set<String> fields, String keyword, String pattern, long offset, int limit);
+
+    /**
+     * Users after an id, ordered by id, matching keyword the same way as {@link #searchProjected}
+     *
+     * @param fields  requested fields
+     * @param keyword search keyword, null for all users
+     * @param pattern ILIKE pattern of keyword
+     * @param lastId  id to seek after
+     * @param limit   maximum rows
+     * @return users
+     */
+    List<UserDTO> findProjectedAfter(Set<String> fields, String keyword, String pattern, long lastId, int limit);
+
+    /**
+     * Users with the given ids, in no particular order
+     *
+     * @param fields requested fields
+     * @param ids    user ids
+     * @return users found
+     */
+    List<UserDTO> findProjectedByIds(Set<String> fields, Collection<Long> ids);
+}
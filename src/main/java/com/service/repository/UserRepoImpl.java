@@ -0,0 +1,113 @@
+package com.service.repository;
+
+import com.service.dto.UserDTO;
+import org.hibernate.jpa.QueryHints;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.Tuple;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Native scalar queries: rows are read into {@link Tuple}s, never into the persistence context,
+ * so a large page costs neither entity snapshots nor dirty checking.
+ */
+public class UserRepoImpl implements UserRepoCustom {
+    private static final String SEARCH = "(u.username ILIKE :pattern OR u.email ILIKE :pattern OR u.username % :keyword OR u.email % :keyword)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<UserDTO> findProjected(Set<String> fields, long offset, int limit) {
+        Query query = query(select(fields) + " FROM tbl_users u ORDER BY u.id OFFSET :offset LIMIT :limit")
+                .setParameter("offset", offset)
+                .setParameter("limit", limit);
+        return map(query);
+    }
+
+    @Override
+    public List<UserDTO> searchProjected(Set<String> fields, String keyword, String pattern, long offset, int limit) {
+        Query query = query(select(fields) + " FROM tbl_users u WHERE " + SEARCH +
+                " ORDER BY GREATEST(similarity(u.username, :keyword), similarity(u.email, :keyword)) DESC, u.id" +
+                " OFFSET :offset LIMIT :limit")
+                .setParameter("keyword", keyword)
+                .setParameter("pattern", pattern)
+                .setParameter("offset", offset)
+                .setParameter("limit", limit);
+        return map(query);
+    }
+
+    @Override
+    public List<UserDTO> findProjectedAfter(Set<String> fields, String keyword, String pattern, long lastId, int limit) {
+        String where = keyword == null ? "" : " AND " + SEARCH;
+        Query query = query(select(fields) + " FROM tbl_users u WHERE u.id > :lastId" + where + " ORDER BY u.id LIMIT :limit")
+                .setParameter("lastId", lastId)
+                .setParameter("limit", limit);
+        if (keyword != null) {
+            query.setParameter("keyword", keyword)
+                    .setParameter("pattern", pattern);
+        }
+        return map(query);
+    }
+
+    @Override
+    public List<UserDTO> findProjectedByIds(Set<String> fields, Collection<Long> ids) {
+        Query query = query(select(fields) + " FROM tbl_users u WHERE u.id IN (:ids)")
+                .setParameter("ids", ids);
+        return map(query);
+    }
+
+    /**
+     * id is always selected, cursors are built from it. Aliases are quoted to keep their case.
+     */
+    private static String select(Set<String> fields) {
+        return "SELECT u.id AS \"id\"" + fields.stream()
+                .filter(field -> !"id".equals(field))
+                .map(field -> ", " + FIELD_COLUMNS.get(field) + " AS \"" + field + "\"")
+                .collect(Collectors.joining());
+    }
+
+    private Query query(String sql) {
+        return entityManager.createNativeQuery(sql, Tuple.class)
+                .setHint(QueryHints.HINT_READONLY, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<UserDTO> map(Query query) {
+        List<Tuple> tuples = query.getResultList();
+        return tuples.stream().map(UserRepoImpl::map).collect(Collectors.toList());
+    }
+
+    private static UserDTO map(Tuple tuple) {
+        UserDTO user = new UserDTO();
+        tuple.getElements().forEach(element -> {
+            Object value = tuple.get(element);
+            switch (element.getAlias()) {
+                case "id":
+                    user.setId(((Number) value).longValue());
+                    break;
+                case "username":
+                    user.setUsername((String) value);
+                    break;
+                case "email":
+                    user.setEmail((String) value);
+                    break;
+                case "createdDate":
+                    user.setCreatedDate((Date) value);
+                    break;
+                case "updatedDate":
+                    user.setUpdatedDate((Date) value);
+                    break;
+                default:
+                    break;
+            }
+        });
+        return user;
+    }
+}
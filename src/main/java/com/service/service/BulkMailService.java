@@ -0,0 +1,182 @@
+package com.service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.service.api.form.BulkEmailForm;
+import com.service.api.form.EmailForm;
+import com.service.config.Translator;
+import com.service.dto.MailJobDTO;
+import com.service.exception.BadRequestException;
+import com.service.exception.ResourceNotFoundException;
+import com.service.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Sends large mailings in the background. A job is split into chunks, each chunk goes out over one pooled
+ * connection, and no more chunks are in flight than there are sender threads. Callers get a job id and poll
+ * its progress; jobs live in memory of the node that accepted them and are forgotten an hour after their last poll.
+ */
+@Service
+@Slf4j(topic = "BULK-MAIL-SERVICE")
+public class BulkMailService implements DisposableBean {
+    private static final int MAX_ERRORS = 100;
+
+    private final MailService mailService;
+    private final ThreadPoolExecutor executor;
+    private final Cache<String, Job> jobs;
+    private final int chunkSize;
+    private final int maxMessages;
+
+    public BulkMailService(MailService mailService, MeterRegistry meterRegistry,
+                           @Value("${mail.bulk.concurrency}") int concurrency,
+                           @Value("${mail.bulk.queue-capacity}") int queueCapacity,
+                           @Value("${mail.bulk.chunk-size}") int chunkSize,
+                           @Value("${mail.bulk.max-messages}") int maxMessages) {
+        this.mailService = mailService;
+        this.chunkSize = chunkSize;
+        this.maxMessages = maxMessages;
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("bulk-mail-"));
+        this.jobs = Caffeine.newBuilder().expireAfterAccess(1, TimeUnit.HOURS).build();
+        new ExecutorServiceMetrics(executor, "bulkMail", Tags.empty()).bindTo(meterRegistry);
+    }
+
+    /**
+     * Accept a mailing and start sending it
+     *
+     * @param form recipients of one email, or complete emails
+     * @return job progress
+     */
+    public MailJobDTO submit(BulkEmailForm form) {
+        List<EmailForm> messages = messages(form);
+        if (messages.isEmpty() || messages.size() > maxMessages) {
+            throw new BadRequestException(Translator.toLocale("mail-bulk-size-invalid"));
+        }
+
+        List<List<EmailForm>> chunks = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i += chunkSize) {
+            chunks.add(messages.subList(i, Math.min(i + chunkSize, messages.size())));
+        }
+        // accept a job only as a whole
+        if (executor.getQueue().remainingCapacity() < chunks.size()) {
+            throw new ServiceUnavailableException(Translator.toLocale("mail-bulk-busy"));
+        }
+
+        Job job = new Job(UUID.randomUUID().toString(), messages.size());
+        jobs.put(job.id, job);
+        log.info("Sending {} emails in {} chunks as job {}", messages.size(), chunks.size(), job.id);
+        for (List<EmailForm> chunk : chunks) {
+            try {
+                executor.execute(() -> send(job, chunk));
+            } catch (RejectedExecutionException e) {
+                // another job took the queue meanwhile
+                job.fail(chunk.size(), Translator.toLocale("mail-bulk-busy"));
+            }
+        }
+        return job.snapshot();
+    }
+
+    /**
+     * Progress of a mailing
+     *
+     * @param id job id
+     * @return job progress
+     * @throws ResourceNotFoundException job unknown or forgotten
+     */
+    public MailJobDTO get(String id) throws ResourceNotFoundException {
+        Job job = jobs.getIfPresent(id);
+        if (job == null) {
+            throw new ResourceNotFoundException(Translator.toLocale("mail-bulk-job-not-found"));
+        }
+        return job.snapshot();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void send(Job job, List<EmailForm> chunk) {
+        List<Exception> failures = mailService.sendEmails(chunk);
+        for (int i = 0; i < chunk.size(); i++) {
+            Exception failure = failures.get(i);
+            if (failure == null) {
+                job.sent.incrementAndGet();
+            } else {
+                job.fail(1, chunk.get(i).getTo() + ": " + failure.getMessage());
+            }
+        }
+    }
+
+    private static List<EmailForm> messages(BulkEmailForm form) {
+        List<EmailForm> messages = new ArrayList<>();
+        if (form.getMessages() != null) {
+            messages.addAll(form.getMessages());
+        }
+        if (form.getTo() != null) {
+            messages.addAll(form.getTo().stream().map(to -> {
+                EmailForm message = new EmailForm();
+                message.setFrom(form.getFrom());
+                message.setTo(to);
+                message.setSubject(form.getSubject());
+                message.setBody(form.getBody());
+                return message;
+            }).collect(Collectors.toList()));
+        }
+        return messages;
+    }
+
+    private static class Job {
+        private final String id;
+        private final long total;
+        private final Date createdDate = new Date();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        private Job(String id, long total) {
+            this.id = id;
+            this.total = total;
+        }
+
+        private void fail(int count, String error) {
+            failed.addAndGet(count);
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(error);
+            }
+        }
+
+        private MailJobDTO snapshot() {
+            long sentCount = sent.get();
+            long failedCount = failed.get();
+            List<String> errorsCopy;
+            synchronized (errors) {
+                errorsCopy = new ArrayList<>(errors);
+            }
+            return MailJobDTO.builder()
+                    .id(id)
+                    .total(total)
+                    .sent(sentCount)
+                    .failed(failedCount)
+                    .done(sentCount + failedCount >= total)
+                    .createdDate(createdDate)
+                    .errors(errorsCopy)
+                    .build();
+        }
+    }
+}
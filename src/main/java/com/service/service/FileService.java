@@ -0,0 +1,291 @@
+package com.service.service;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.ResponseHeaderOverrides;
+import com.service.api.form.FileUploadForm;
+import com.service.config.Translator;
+import com.service.dto.FileDTO;
+import com.service.dto.PresignedUrlDTO;
+import com.service.exception.BadRequestException;
+import com.service.exception.ResourceNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Files uploaded and downloaded by clients straight from storage with presigned URLs, this service only signs
+ * the URLs and keeps the metadata: stored objects in tbl_files, and one row of tbl_file_refs per upload with its
+ * owner and name. Clients only ever see the id of their reference.
+ * <p>
+ * An upload URL signs the content type and length, S3 rejects a request sending others. Completing an upload reads
+ * the object back with a HEAD request before recording it, so only objects that exist and respect the limits are
+ * recorded, whatever the client claims.
+ * <p>
+ * Files streamed through this service are recorded by the SHA-256 of their content, with the number of uploads
+ * referencing them; the object is deleted with the last reference. Each reference is only signed for and dropped
+ * by its owner, once.
+ */
+@Service
+@Slf4j(topic = "FILE-SERVICE")
+public class FileService {
+    private static final String UPLOAD_PREFIX = "uploads/";
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final String DEFAULT_NAME = "file";
+    // a second completion of the same key inserts nothing and is answered with the reference of the first one,
+    // only when the same user completes it
+    private static final String COMPLETE_SQL = "WITH f AS (" +
+            "INSERT INTO tbl_files (object_key, content_type, size) VALUES (?, ?, ?) " +
+            "ON CONFLICT (object_key) DO NOTHING RETURNING id, object_key, content_type, size), " +
+            "r AS (INSERT INTO tbl_file_refs (file_id, owner, name) SELECT id, ?, ? FROM f RETURNING id, file_id, name) " +
+            "SELECT r.id, r.name, f.object_key, f.content_type, f.size FROM r JOIN f ON f.id = r.file_id";
+    private static final String COMPLETED_SQL = "SELECT r.id, r.name, f.object_key, f.content_type, f.size " +
+            "FROM tbl_file_refs r JOIN tbl_files f ON f.id = r.file_id WHERE f.object_key = ? AND r.owner = ? ORDER BY r.id LIMIT 1";
+    private static final String SELECT_SQL = "SELECT f.object_key, r.name FROM tbl_file_refs r " +
+            "JOIN tbl_files f ON f.id = r.file_id WHERE r.id = ? AND r.owner = ?";
+    private static final String REFERENCE_SQL = "WITH f AS (" +
+            "UPDATE tbl_files SET ref_count = ref_count + 1 WHERE sha256 = ? " +
+            "RETURNING id, object_key, content_type, size), " +
+            "r AS (INSERT INTO tbl_file_refs (file_id, owner, name) SELECT id, ?, ? FROM f RETURNING id, file_id, name) " +
+            "SELECT r.id, r.name, f.object_key, f.content_type, f.size FROM r JOIN f ON f.id = r.file_id";
+    // an upload racing another of the same content references the row the other one inserted
+    private static final String RECORD_SQL = "WITH f AS (" +
+            "INSERT INTO tbl_files (object_key, content_type, size, sha256) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (sha256) DO UPDATE SET ref_count = tbl_files.ref_count + 1 " +
+            "RETURNING id, object_key, content_type, size), " +
+            "r AS (INSERT INTO tbl_file_refs (file_id, owner, name) SELECT id, ?, ? FROM f RETURNING id, file_id, name) " +
+            "SELECT r.id, r.name, f.object_key, f.content_type, f.size FROM r JOIN f ON f.id = r.file_id";
+    private static final String RELEASE_SQL = "WITH r AS (" +
+            "DELETE FROM tbl_file_refs WHERE id = ? AND owner = ? RETURNING file_id) " +
+            "UPDATE tbl_files f SET ref_count = f.ref_count - 1 FROM r WHERE f.id = r.file_id RETURNING f.id, f.ref_count";
+    private static final String DELETE_SQL = "DELETE FROM tbl_files WHERE id = ? RETURNING object_key";
+
+    private final AmazonS3 amazonS3;
+    private final JdbcTemplate jdbcTemplate;
+    private final String bucketName;
+    private final long expiry;
+    private final long maxSize;
+
+    public FileService(AmazonS3 amazonS3, JdbcTemplate jdbcTemplate,
+                       @Value("${cloud.aws.credentials.bucketName}") String bucketName,
+                       @Value("${cloud.aws.s3.presign.expiry}") long expiry,
+                       @Value("${cloud.aws.s3.presign.max-size}") long maxSize) {
+        this.amazonS3 = amazonS3;
+        this.jdbcTemplate = jdbcTemplate;
+        this.bucketName = bucketName;
+        this.expiry = expiry;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * URL to upload one file of the given type and size
+     *
+     * @param form file to upload
+     * @return presigned PUT
+     * @throws BadRequestException file too large
+     */
+    public PresignedUrlDTO uploadUrl(FileUploadForm form) {
+        if (form.getSize() > maxSize) {
+            throw new BadRequestException(Translator.toLocale("file-size-invalid"));
+        }
+        // a random folder per upload, so nobody can overwrite an object of someone else
+        String key = UPLOAD_PREFIX + UUID.randomUUID() + "/" + safeName(form.getName());
+        Date expiredDate = new Date(System.currentTimeMillis() + expiry);
+        log.info("Signing upload of {} bytes to {}", form.getSize(), key);
+
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, key, HttpMethod.PUT)
+                .withExpiration(expiredDate)
+                .withContentType(form.getContentType());
+        request.putCustomRequestHeader(Headers.CONTENT_LENGTH, String.valueOf(form.getSize()));
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(Headers.CONTENT_TYPE, form.getContentType());
+        headers.put(Headers.CONTENT_LENGTH, String.valueOf(form.getSize()));
+        return PresignedUrlDTO.builder()
+                .key(key)
+                .method(HttpMethod.PUT.name())
+                .url(amazonS3.generatePresignedUrl(request).toString())
+                .headers(headers)
+                .expiredDate(expiredDate)
+                .build();
+    }
+
+    /**
+     * Record a file uploaded with an upload URL, recording it again by the same user returns the same reference
+     *
+     * @param key   object key of the upload URL
+     * @param owner username of the uploader
+     * @return reference to the recorded file
+     * @throws ResourceNotFoundException object not uploaded, or recorded by someone else
+     * @throws BadRequestException       key not of an upload URL, or object too large, it is then deleted
+     */
+    public FileDTO complete(String key, String owner) throws ResourceNotFoundException {
+        if (!key.startsWith(UPLOAD_PREFIX) || key.contains("..")) {
+            throw new BadRequestException(Translator.toLocale("file-key-invalid"));
+        }
+
+        ObjectMetadata metadata;
+        try {
+            metadata = amazonS3.getObjectMetadata(bucketName, key);
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+                throw new ResourceNotFoundException(Translator.toLocale("file-not-found"));
+            }
+            throw e;
+        }
+        if (metadata.getContentLength() > maxSize) {
+            log.warn("Deleting upload {} of {} bytes, over the limit", key, metadata.getContentLength());
+            amazonS3.deleteObject(bucketName, key);
+            throw new BadRequestException(Translator.toLocale("file-size-invalid"));
+        }
+
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        List<FileDTO> files = jdbcTemplate.query(COMPLETE_SQL, this::mapFile,
+                key, metadata.getContentType(), metadata.getContentLength(), owner, name);
+        if (files.isEmpty()) {
+            files = jdbcTemplate.query(COMPLETED_SQL, this::mapFile, key, owner);
+            if (files.isEmpty()) {
+                // completed by someone else, or completed before and deleted since
+                throw new ResourceNotFoundException(Translator.toLocale("file-not-found"));
+            }
+        }
+        log.info("Recorded upload {} as file {}", key, files.get(0).getId());
+        return files.get(0);
+    }
+
+    /**
+     * URL to download a file of its owner under the name it was uploaded with
+     *
+     * @param id    file reference id
+     * @param owner username of the caller
+     * @return presigned GET
+     * @throws ResourceNotFoundException no such reference of the caller
+     */
+    public PresignedUrlDTO downloadUrl(long id, String owner) throws ResourceNotFoundException {
+        List<String[]> files = jdbcTemplate.query(SELECT_SQL,
+                (rs, rowNum) -> new String[]{rs.getString("object_key"), rs.getString("name")}, id, owner);
+        if (files.isEmpty()) {
+            throw new ResourceNotFoundException(Translator.toLocale("file-not-found"));
+        }
+        String key = files.get(0)[0];
+        Date expiredDate = new Date(System.currentTimeMillis() + expiry);
+
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, key, HttpMethod.GET)
+                .withExpiration(expiredDate)
+                .withResponseHeaders(new ResponseHeaderOverrides()
+                        .withContentDisposition(ContentDisposition.attachment()
+                                .filename(files.get(0)[1], StandardCharsets.UTF_8).build().toString()));
+        return PresignedUrlDTO.builder()
+                .key(key)
+                .method(HttpMethod.GET.name())
+                .url(amazonS3.generatePresignedUrl(request).toString())
+                .expiredDate(expiredDate)
+                .build();
+    }
+
+    /**
+     * Add a reference to the stored file of a content
+     *
+     * @param sha256 hex SHA-256 of the content
+     * @param owner  username of the uploader
+     * @param name   file name of the upload
+     * @return new reference, null when the content is not stored
+     */
+    public FileDTO reference(String sha256, String owner, String name) {
+        List<FileDTO> files = jdbcTemplate.query(REFERENCE_SQL, this::mapFile, sha256, owner, cleanName(name));
+        return files.isEmpty() ? null : files.get(0);
+    }
+
+    /**
+     * Record a stored content with one reference, or add a reference when it was recorded meanwhile
+     *
+     * @param key         object key
+     * @param contentType content type
+     * @param size        size in bytes
+     * @param sha256      hex SHA-256 of the content
+     * @param owner       username of the uploader
+     * @param name        file name of the upload
+     * @return new reference
+     */
+    public FileDTO record(String key, String contentType, long size, String sha256, String owner, String name) {
+        FileDTO fileDTO = jdbcTemplate.queryForObject(RECORD_SQL, this::mapFile,
+                key, contentType, size, sha256, owner, cleanName(name));
+        log.info("Recorded {} as file {}", key, fileDTO == null ? null : fileDTO.getId());
+        return fileDTO;
+    }
+
+    /**
+     * Drop a reference of its owner, the last reference to a file deletes it. The file row stays locked until
+     * the object is deleted, so an upload of the same content waits and stores it again rather than referencing
+     * a deleted object.
+     *
+     * @param id    file reference id
+     * @param owner username of the caller
+     * @throws ResourceNotFoundException no such reference of the caller, e.g. already dropped
+     */
+    @Transactional
+    public void release(long id, String owner) throws ResourceNotFoundException {
+        List<long[]> files = jdbcTemplate.query(RELEASE_SQL,
+                (rs, rowNum) -> new long[]{rs.getLong("id"), rs.getLong("ref_count")}, id, owner);
+        if (files.isEmpty()) {
+            throw new ResourceNotFoundException(Translator.toLocale("file-not-found"));
+        }
+        if (files.get(0)[1] > 0) {
+            return;
+        }
+        long fileId = files.get(0)[0];
+        String key = jdbcTemplate.queryForObject(DELETE_SQL, String.class, fileId);
+        log.info("Deleting file {} stored as {}, no reference left", fileId, key);
+        amazonS3.deleteObject(bucketName, key);
+    }
+
+    private FileDTO mapFile(ResultSet rs, int rowNum) throws SQLException {
+        FileDTO fileDTO = new FileDTO();
+        fileDTO.setId(rs.getLong("id"));
+        fileDTO.setName(rs.getString("name"));
+        fileDTO.setContentType(rs.getString("content_type"));
+        fileDTO.setSize(rs.getLong("size"));
+        fileDTO.setUrl(amazonS3.getUrl(bucketName, rs.getString("object_key")).toString());
+        return fileDTO;
+    }
+
+    /**
+     * Name usable in a key and a header, other characters are replaced
+     */
+    private static String safeName(String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Name of an upload as stored and returned: the last segment of a path, without control characters, fitting
+     * its column. Headers carry it encoded, so other characters are kept.
+     */
+    private static String cleanName(String name) {
+        if (name == null) {
+            return DEFAULT_NAME;
+        }
+        String clean = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1)
+                .replaceAll("\\p{Cntrl}", "").trim();
+        if (clean.isEmpty()) {
+            return DEFAULT_NAME;
+        }
+        return clean.length() > MAX_NAME_LENGTH ? clean.substring(0, MAX_NAME_LENGTH) : clean;
+    }
+}
@@ -0,0 +1,158 @@
+package com.service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.service.config.Translator;
+import com.service.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Throttles login attempts by username and by client address before any database or hashing work.
+ * <p>
+ * Each key owns a token bucket refilled over {@code login.throttle.refill-period}. After
+ * {@code login.throttle.failures-before-backoff} consecutive failures the key is blocked for an exponentially
+ * growing time. State is swapped with compare-and-set, so concurrent attempts never take a lock, and keys
+ * are kept in bounded caches that forget idle keys.
+ */
+@Service
+@Slf4j(topic = "LOGIN-ATTEMPT-SERVICE")
+public class LoginAttemptService {
+    private final Cache<String, AtomicReference<Attempts>> usernames;
+    private final Cache<String, AtomicReference<Attempts>> addresses;
+    private final int usernameCapacity;
+    private final int addressCapacity;
+    private final long refillPeriod;
+    private final int failuresBeforeBackoff;
+    private final long backoffBase;
+    private final long backoffMax;
+    private final Counter usernameRejected;
+    private final Counter addressRejected;
+
+    public LoginAttemptService(MeterRegistry meterRegistry,
+                               @Value("${login.throttle.username-capacity}") int usernameCapacity,
+                               @Value("${login.throttle.address-capacity}") int addressCapacity,
+                               @Value("${login.throttle.refill-period}") long refillPeriod,
+                               @Value("${login.throttle.failures-before-backoff}") int failuresBeforeBackoff,
+                               @Value("${login.throttle.backoff-base}") long backoffBase,
+                               @Value("${login.throttle.backoff-max}") long backoffMax,
+                               @Value("${login.throttle.maximum-keys}") long maximumKeys) {
+        this.usernameCapacity = usernameCapacity;
+        this.addressCapacity = addressCapacity;
+        this.refillPeriod = TimeUnit.MILLISECONDS.toNanos(refillPeriod);
+        this.failuresBeforeBackoff = failuresBeforeBackoff;
+        this.backoffBase = TimeUnit.MILLISECONDS.toNanos(backoffBase);
+        this.backoffMax = TimeUnit.MILLISECONDS.toNanos(backoffMax);
+
+        long idle = Math.max(refillPeriod, backoffMax);
+        this.usernames = Caffeine.newBuilder().maximumSize(maximumKeys).expireAfterAccess(idle, TimeUnit.MILLISECONDS).build();
+        this.addresses = Caffeine.newBuilder().maximumSize(maximumKeys).expireAfterAccess(idle, TimeUnit.MILLISECONDS).build();
+        this.usernameRejected = Counter.builder("login.throttle.rejected").tag("key", "username").register(meterRegistry);
+        this.addressRejected = Counter.builder("login.throttle.rejected").tag("key", "address").register(meterRegistry);
+    }
+
+    /**
+     * Take one attempt for username and client address
+     *
+     * @param username username
+     * @param address  client address
+     * @throws TooManyRequestsException when one of the keys is exhausted or blocked
+     */
+    public void checkAllowed(String username, String address) {
+        long waitAddress = tryAcquire(addresses, address, addressCapacity);
+        if (waitAddress > 0) {
+            addressRejected.increment();
+            throw tooManyRequests(address, waitAddress);
+        }
+        long waitUsername = tryAcquire(usernames, username, usernameCapacity);
+        if (waitUsername > 0) {
+            usernameRejected.increment();
+            throw tooManyRequests(username, waitUsername);
+        }
+    }
+
+    /**
+     * Record failed login, keys are blocked with exponential backoff after repeated failures
+     *
+     * @param username username
+     * @param address  client address
+     */
+    public void loginFailed(String username, String address) {
+        failed(addresses, address, addressCapacity);
+        failed(usernames, username, usernameCapacity);
+    }
+
+    /**
+     * Record successful login, failures of username are forgotten
+     *
+     * @param username username
+     */
+    public void loginSucceeded(String username) {
+        AtomicReference<Attempts> attempts = usernames.getIfPresent(username);
+        if (attempts != null) {
+            attempts.updateAndGet(current -> new Attempts(current.tokens, current.updatedAt, 0, current.lastFailureAt, current.blockedUntil));
+        }
+    }
+
+    private long tryAcquire(Cache<String, AtomicReference<Attempts>> cache, String key, int capacity) {
+        AtomicReference<Attempts> attempts = cache.get(key, k -> new AtomicReference<>(new Attempts(capacity, System.nanoTime(), 0, 0, 0)));
+        while (true) {
+            long now = System.nanoTime();
+            Attempts current = attempts.get();
+            if (current.failures >= failuresBeforeBackoff && current.blockedUntil - now > 0) {
+                return current.blockedUntil - now;
+            }
+            double tokens = refill(current, now, capacity);
+            if (tokens < 1) {
+                return (long) ((1 - tokens) * refillPeriod / capacity);
+            }
+            if (attempts.compareAndSet(current, new Attempts(tokens - 1, now, current.failures, current.lastFailureAt, current.blockedUntil))) {
+                return 0;
+            }
+        }
+    }
+
+    private void failed(Cache<String, AtomicReference<Attempts>> cache, String key, int capacity) {
+        AtomicReference<Attempts> attempts = cache.get(key, k -> new AtomicReference<>(new Attempts(capacity, System.nanoTime(), 0, 0, 0)));
+        Attempts updated = attempts.updateAndGet(current -> {
+            long now = System.nanoTime();
+            // failures are forgotten after a quiet period as long as the longest backoff
+            int failures = current.failures > 0 && now - current.lastFailureAt > backoffMax ? 1 : current.failures + 1;
+            long blockedUntil = current.blockedUntil;
+            if (failures >= failuresBeforeBackoff) {
+                int exponent = Math.min(failures - failuresBeforeBackoff, 30);
+                blockedUntil = now + Math.min(backoffMax, backoffBase << exponent);
+            }
+            return new Attempts(refill(current, now, capacity), now, failures, now, blockedUntil);
+        });
+        if (updated.failures == failuresBeforeBackoff) {
+            log.warn("Too many failed logins for {}", key);
+        }
+    }
+
+    private double refill(Attempts attempts, long now, int capacity) {
+        return Math.min(capacity, attempts.tokens + (double) (now - attempts.updatedAt) * capacity / refillPeriod);
+    }
+
+    private TooManyRequestsException tooManyRequests(String key, long waitNanos) {
+        log.info("Login attempt of {} rejected", key);
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos));
+        return new TooManyRequestsException(Translator.toLocale("user-authenticate.too-many"), retryAfter);
+    }
+
+    @AllArgsConstructor
+    private static final class Attempts {
+        private final double tokens;
+        private final long updatedAt;
+        private final int failures;
+        private final long lastFailureAt;
+        private final long blockedUntil;
+    }
+}
@@ -0,0 +1,302 @@
+package com.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mails written to tbl_mail_outbox in the transaction of the change that caused them, and sent by a pool of
+ * workers afterwards. A request never waits for SMTP, and a mail is never sent for a change that was rolled back.
+ * <p>
+ * Workers claim a batch of due mails with {@code FOR UPDATE SKIP LOCKED} under a lease, send the batch over one
+ * SMTP connection and delete what was sent. Failed mails are retried with exponential backoff until they run out
+ * of attempts; mails of a worker that died are claimed again once their lease ran out.
+ */
+@Service
+@Slf4j(topic = "MAIL-OUTBOX-SERVICE")
+public class MailOutboxService implements DisposableBean {
+    private static final String INSERT_SQL = "INSERT INTO tbl_mail_outbox (mail_from, mail_to, subject, body, html_body) VALUES (?, ?, ?, ?, ?)";
+    private static final String CLAIM_SQL = "UPDATE tbl_mail_outbox SET locked_until = CURRENT_TIMESTAMP + ? * INTERVAL '1 millisecond', " +
+            "attempts = attempts + 1 WHERE id IN (" +
+            "SELECT id FROM tbl_mail_outbox WHERE failed_date IS NULL AND next_attempt_date <= CURRENT_TIMESTAMP " +
+            "AND (locked_until IS NULL OR locked_until < CURRENT_TIMESTAMP) " +
+            "ORDER BY next_attempt_date LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING id, mail_from, mail_to, subject, body, html_body, attempts, created_date";
+    private static final String DELETE_SQL = "DELETE FROM tbl_mail_outbox WHERE id = ANY(?)";
+    private static final String RETRY_SQL = "UPDATE tbl_mail_outbox SET locked_until = NULL, last_error = ?, " +
+            "next_attempt_date = CURRENT_TIMESTAMP + ? * INTERVAL '1 millisecond' WHERE id = ?";
+    private static final String FAIL_SQL = "UPDATE tbl_mail_outbox SET locked_until = NULL, last_error = ?, " +
+            "failed_date = CURRENT_TIMESTAMP WHERE id = ?";
+    private static final String DEPTH_SQL = "SELECT COUNT(*) FROM tbl_mail_outbox WHERE failed_date IS NULL";
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JavaMailSender mailSender;
+    private final int batchSize;
+    private final long pollInterval;
+    private final long lease;
+    private final int maxAttempts;
+    private final long backoffInitial;
+    private final long backoffMax;
+    private final List<Thread> workers = new ArrayList<>();
+    // released on commit of a new mail so an idle worker picks it up without waiting for its next poll
+    private final Semaphore wakeUp = new Semaphore(0);
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+    private final Timer sendTimer;
+    private final Timer latencyTimer;
+    private volatile boolean running = true;
+
+    public MailOutboxService(JdbcTemplate jdbcTemplate, JavaMailSender mailSender, MeterRegistry meterRegistry,
+                             @Value("${mail.outbox.workers}") int workerCount,
+                             @Value("${mail.outbox.batch-size}") int batchSize,
+                             @Value("${mail.outbox.poll-interval}") long pollInterval,
+                             @Value("${mail.outbox.lease}") long lease,
+                             @Value("${mail.outbox.max-attempts}") int maxAttempts,
+                             @Value("${mail.outbox.backoff-initial}") long backoffInitial,
+                             @Value("${mail.outbox.backoff-max}") long backoffMax) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mailSender = mailSender;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.lease = lease;
+        this.maxAttempts = maxAttempts;
+        this.backoffInitial = backoffInitial;
+        this.backoffMax = backoffMax;
+        this.sentCounter = Counter.builder("mail.outbox.sent").register(meterRegistry);
+        this.retriedCounter = Counter.builder("mail.outbox.failed").tag("outcome", "retry").register(meterRegistry);
+        this.failedCounter = Counter.builder("mail.outbox.failed").tag("outcome", "dead").register(meterRegistry);
+        this.sendTimer = Timer.builder("mail.outbox.send")
+                .description("Time to send a batch over one connection")
+                .register(meterRegistry);
+        this.latencyTimer = Timer.builder("mail.outbox.latency")
+                .description("Time from enqueue to delivery to the SMTP server")
+                .register(meterRegistry);
+        Gauge.builder("mail.outbox.depth", this, MailOutboxService::depth)
+                .description("Mails waiting to be sent")
+                .register(meterRegistry);
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "mail-outbox-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Queue a mail in the current transaction, it is sent once the transaction committed
+     *
+     * @param from    sender
+     * @param to      recipient
+     * @param subject subject
+     * @param body    plain text body
+     * @param html    HTML body sent along the plain text one, nullable
+     */
+    public void enqueue(String from, String to, String subject, String body, String html) {
+        log.info("Queueing email to {}", to);
+
+        jdbcTemplate.update(INSERT_SQL, from, to, subject, body, html);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp.release();
+                }
+            });
+        } else {
+            wakeUp.release();
+        }
+    }
+
+    /**
+     * Claim one batch of due mails and send it
+     *
+     * @return number of mails claimed
+     */
+    public int drain() {
+        List<OutboxMail> batch = jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new OutboxMail(
+                        rs.getLong("id"),
+                        rs.getString("mail_from"),
+                        rs.getString("mail_to"),
+                        rs.getString("subject"),
+                        rs.getString("body"),
+                        rs.getString("html_body"),
+                        rs.getInt("attempts"),
+                        rs.getTimestamp("created_date")),
+                lease, batchSize);
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+        return batch.size();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void send(List<OutboxMail> batch) {
+        Map<Long, Exception> failures = new HashMap<>();
+        List<MimeMessage> messages = new ArrayList<>(batch.size());
+        List<OutboxMail> prepared = new ArrayList<>(batch.size());
+        for (OutboxMail mail : batch) {
+            try {
+                messages.add(message(mail));
+                prepared.add(mail);
+            } catch (MessagingException e) {
+                failures.put(mail.getId(), e);
+            }
+        }
+
+        if (!messages.isEmpty()) {
+            Timer.Sample sample = Timer.start();
+            try {
+                // one connection for the whole batch
+                mailSender.send(messages.toArray(new MimeMessage[0]));
+            } catch (MailSendException e) {
+                Map<Object, Exception> failed = e.getFailedMessages();
+                for (int i = 0; i < messages.size(); i++) {
+                    Exception failure = failed.get(messages.get(i));
+                    if (failure != null || failed.isEmpty()) {
+                        failures.put(prepared.get(i).getId(), failure != null ? failure : e);
+                    }
+                }
+            } catch (MailException e) {
+                prepared.forEach(mail -> failures.put(mail.getId(), e));
+            } finally {
+                sample.stop(sendTimer);
+            }
+        }
+
+        List<Long> sent = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (OutboxMail mail : batch) {
+            Exception failure = failures.get(mail.getId());
+            if (failure == null) {
+                sent.add(mail.getId());
+                latencyTimer.record(now - mail.getCreatedDate().getTime(), TimeUnit.MILLISECONDS);
+            } else {
+                fail(mail, failure);
+            }
+        }
+        if (!sent.isEmpty()) {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(DELETE_SQL);
+                statement.setArray(1, connection.createArrayOf("bigint", sent.toArray()));
+                return statement;
+            });
+            sentCounter.increment(sent.size());
+        }
+    }
+
+    private void fail(OutboxMail mail, Exception failure) {
+        String error = String.valueOf(failure.getMessage());
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        if (mail.getAttempts() >= maxAttempts) {
+            log.error("Giving up email {} to {} after {} attempts: {}", mail.getId(), mail.getTo(), mail.getAttempts(), error);
+            jdbcTemplate.update(FAIL_SQL, error, mail.getId());
+            failedCounter.increment();
+        } else {
+            long backoff = backoff(mail.getAttempts());
+            log.warn("Retrying email {} to {} in {} ms: {}", mail.getId(), mail.getTo(), backoff, error);
+            jdbcTemplate.update(RETRY_SQL, error, backoff, mail.getId());
+            retriedCounter.increment();
+        }
+    }
+
+    /**
+     * Doubles from the initial backoff with each attempt, up to the maximum
+     */
+    private long backoff(int attempts) {
+        int shift = Math.min(attempts - 1, 30);
+        return Math.min(backoffInitial << shift, backoffMax);
+    }
+
+    private MimeMessage message(OutboxMail mail) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, mail.getHtml() != null, "UTF-8");
+        helper.setFrom(mail.getFrom());
+        helper.setTo(mail.getTo());
+        helper.setSubject(mail.getSubject());
+        if (mail.getHtml() != null) {
+            helper.setText(mail.getBody(), mail.getHtml());
+        } else {
+            helper.setText(mail.getBody());
+        }
+        return message;
+    }
+
+    private double depth() {
+        try {
+            Long depth = jdbcTemplate.queryForObject(DEPTH_SQL, Long.class);
+            return depth == null ? 0 : depth;
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                // a full batch means more may be due, keep draining without waiting
+                if (drain() < batchSize) {
+                    wakeUp.tryAcquire(pollInterval, TimeUnit.MILLISECONDS);
+                    wakeUp.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Can not drain mail outbox: {}", e.getMessage());
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @lombok.Value
+    private static class OutboxMail {
+        long id;
+        String from;
+        String to;
+        String subject;
+        String body;
+        String html;
+        int attempts;
+        Timestamp createdDate;
+    }
+}
@@ -1,8 +1,11 @@
 package com.service.service;
 
+import com.service.api.form.EmailForm;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
@@ -12,6 +15,10 @@ import org.springframework.util.StringUtils;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j(topic = "MAIL-SERVICE")
@@ -19,6 +26,8 @@ public class MailService {
 
     @Autowired
     private JavaMailSender emailSender;
+    @Autowired
+    private MailTemplateService mailTemplateService;
 
     /**
      * Sending Simple Emails
@@ -40,6 +49,49 @@ public class MailService {
         emailSender.send(message);
     }
 
+    /**
+     * Sending many plain text emails over one pooled connection
+     *
+     * @param messages emails, attachments are not sent
+     * @return failure of each email by index, null when it was sent
+     */
+    public List<Exception> sendEmails(List<EmailForm> messages) {
+        log.info("Sending {} emails", messages.size());
+
+        List<Exception> failures = new ArrayList<>(Collections.nCopies(messages.size(), null));
+        List<MimeMessage> mimeMessages = new ArrayList<>(messages.size());
+        List<Integer> indexes = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            EmailForm form = messages.get(i);
+            try {
+                MimeMessage message = emailSender.createMimeMessage();
+                MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+                helper.setFrom(form.getFrom());
+                helper.setTo(form.getTo());
+                helper.setSubject(form.getSubject());
+                helper.setText(form.getBody());
+                mimeMessages.add(message);
+                indexes.add(i);
+            } catch (MessagingException | RuntimeException e) {
+                failures.set(i, e);
+            }
+        }
+
+        try {
+            emailSender.send(mimeMessages.toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            for (int i = 0; i < mimeMessages.size(); i++) {
+                Exception failure = e.getFailedMessages().get(mimeMessages.get(i));
+                if (failure != null || e.getFailedMessages().isEmpty()) {
+                    failures.set(indexes.get(i), failure != null ? failure : e);
+                }
+            }
+        } catch (MailException e) {
+            indexes.forEach(i -> failures.set(i, e));
+        }
+        return failures;
+    }
+
     /**
      * Sending Emails With Attachments
      *
@@ -68,4 +120,40 @@ public class MailService {
 
         emailSender.send(message);
     }
+
+    /**
+     * Sending Emails rendered from a template in the language of the request, with plain text and HTML parts
+     *
+     * @param from     sender
+     * @param to       recipient
+     * @param subject  subject, the one of the template when empty
+     * @param template template name
+     * @param model    values of the template placeholders
+     * @param pathFile attachment, nullable
+     * @throws MessagingException
+     */
+    public void sendTemplateEmail(String from, String to, String subject, String template, Map<String, ?> model,
+                                  String pathFile) throws MessagingException {
+        log.info("Sending email {} to {}", template, to);
+
+        MailTemplateService.Rendered mail = mailTemplateService.render(template, model == null ? Map.of() : model);
+        MimeMessage message = emailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+
+        helper.setFrom(from);
+        helper.setTo(to);
+        helper.setSubject(StringUtils.hasText(subject) ? subject : mail.getSubject());
+        if (mail.getHtml() != null) {
+            helper.setText(mail.getText(), mail.getHtml());
+        } else {
+            helper.setText(mail.getText());
+        }
+
+        if (StringUtils.hasLength(pathFile)) {
+            FileSystemResource file = new FileSystemResource(new File(pathFile));
+            helper.addAttachment("Attach file", file);
+        }
+
+        emailSender.send(message);
+    }
 }
@@ -0,0 +1,225 @@
+package com.service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.service.config.ApiLocaleResolver;
+import com.service.config.Translator;
+import com.service.exception.BadRequestException;
+import com.service.util.MailTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Mail templates of {@code mail.template.location}, compiled once and kept in a bounded cache by name and locale.
+ * <p>
+ * A template is a plain text part {@code <name>.txt}, with an optional HTML part {@code <name>.html} and an optional
+ * subject {@code <name>.subject}. Localized templates add the locale to the name, {@code reset-password_vi.txt}, and
+ * the most specific one present for the locale of the request is used. A cached template is checked for changes
+ * at most once per {@code mail.template.check-interval} and compiled again when its files changed.
+ */
+@Service
+@Slf4j(topic = "MAIL-TEMPLATE-SERVICE")
+public class MailTemplateService {
+    private static final String TEXT = ".txt";
+    private static final String HTML = ".html";
+    private static final String SUBJECT = ".subject";
+
+    private final ResourceLoader resourceLoader;
+    private final String location;
+    private final long checkInterval;
+    private final String[] preload;
+    private final Cache<String, Entry> templates;
+
+    public MailTemplateService(ResourceLoader resourceLoader,
+                               @Value("${mail.template.location}") String location,
+                               @Value("${mail.template.cache-size}") long cacheSize,
+                               @Value("${mail.template.check-interval}") long checkInterval,
+                               @Value("${mail.template.preload}") String[] preload) {
+        this.resourceLoader = resourceLoader;
+        this.location = location.endsWith("/") ? location : location + "/";
+        this.checkInterval = checkInterval;
+        this.preload = preload;
+        this.templates = Caffeine.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    /**
+     * Compile the templates sent by the service itself, a broken one fails the startup instead of a send
+     */
+    @PostConstruct
+    public void init() {
+        for (String name : preload) {
+            if (StringUtils.hasText(name)) {
+                for (Locale locale : ApiLocaleResolver.LOCALES) {
+                    if (templates.get(name.trim() + "|" + locale, k -> load(name.trim(), locale)) == null) {
+                        throw new IllegalStateException("Mail template not found: " + name);
+                    }
+                }
+            }
+        }
+        log.info("Compiled {} mail templates", templates.estimatedSize());
+    }
+
+    /**
+     * Render a template in the locale of the current request
+     *
+     * @param name  template name
+     * @param model values of the placeholders
+     * @return rendered mail
+     * @throws BadRequestException template not found
+     */
+    public Rendered render(String name, Map<String, ?> model) {
+        return render(name, LocaleContextHolder.getLocale(), model);
+    }
+
+    /**
+     * Render a template in a locale
+     *
+     * @param name   template name
+     * @param locale locale
+     * @param model  values of the placeholders
+     * @return rendered mail
+     * @throws BadRequestException template not found
+     */
+    public Rendered render(String name, Locale locale, Map<String, ?> model) {
+        if (!StringUtils.hasText(name) || name.contains("/") || name.contains("..")) {
+            throw new BadRequestException(Translator.toLocale("mail-template-not-found"));
+        }
+        String key = name + "|" + locale;
+        Entry entry = templates.get(key, k -> load(name, locale));
+        if (entry == null) {
+            throw new BadRequestException(Translator.toLocale("mail-template-not-found"));
+        }
+        entry = reloadIfChanged(key, entry);
+
+        return new Rendered(
+                entry.subject == null ? null : entry.subject.render(model),
+                entry.text.render(model),
+                entry.html == null ? null : entry.html.render(model));
+    }
+
+    private Entry reloadIfChanged(String key, Entry entry) {
+        long now = System.currentTimeMillis();
+        if (now - entry.checkedDate < checkInterval) {
+            return entry;
+        }
+        entry.checkedDate = now;
+        if (lastModified(entry.base) == entry.lastModified) {
+            return entry;
+        }
+        try {
+            Entry reloaded = compile(entry.base);
+            if (reloaded != null) {
+                log.info("Reloaded mail template {}", entry.base);
+                templates.put(key, reloaded);
+                return reloaded;
+            }
+            log.warn("Mail template {} was removed, keeping the compiled one", entry.base);
+        } catch (RuntimeException e) {
+            log.error("Can not reload mail template {}, keeping the compiled one: {}", entry.base, e.getMessage());
+        }
+        return entry;
+    }
+
+    /**
+     * Compile the most specific template present for the locale, null when there is none
+     */
+    private Entry load(String name, Locale locale) {
+        String[] candidates = {
+                name + "_" + locale.getLanguage() + "_" + locale.getCountry(),
+                name + "_" + locale.getLanguage(),
+                name};
+        for (String base : candidates) {
+            if (base.endsWith("_")) {
+                continue;
+            }
+            Entry entry = compile(base);
+            if (entry != null) {
+                log.debug("Compiled mail template {} for locale {}", base, locale);
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private Entry compile(String base) {
+        long lastModified = lastModified(base);
+        String text = read(base + TEXT);
+        if (text == null) {
+            return null;
+        }
+        String html = read(base + HTML);
+        String subject = read(base + SUBJECT);
+        return new Entry(base, lastModified,
+                subject == null ? null : MailTemplate.compile(subject.trim(), false),
+                MailTemplate.compile(text, false),
+                html == null ? null : MailTemplate.compile(html, true));
+    }
+
+    private String read(String file) {
+        Resource resource = resourceLoader.getResource(location + file);
+        if (!resource.exists()) {
+            return null;
+        }
+        try (InputStream in = resource.getInputStream()) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Latest change of the files of a template, 0 when unknown
+     */
+    private long lastModified(String base) {
+        long lastModified = 0;
+        for (String suffix : new String[]{TEXT, HTML, SUBJECT}) {
+            Resource resource = resourceLoader.getResource(location + base + suffix);
+            try {
+                if (resource.exists()) {
+                    lastModified = Math.max(lastModified, resource.lastModified());
+                }
+            } catch (IOException e) {
+                // resources inside a jar may not tell, they do not change either
+            }
+        }
+        return lastModified;
+    }
+
+    private static class Entry {
+        private final String base;
+        private final long lastModified;
+        private final MailTemplate subject;
+        private final MailTemplate text;
+        private final MailTemplate html;
+        private volatile long checkedDate = System.currentTimeMillis();
+
+        private Entry(String base, long lastModified, MailTemplate subject, MailTemplate text, MailTemplate html) {
+            this.base = base;
+            this.lastModified = lastModified;
+            this.subject = subject;
+            this.text = text;
+            this.html = html;
+        }
+    }
+
+    @lombok.Value
+    public static class Rendered {
+        String subject;
+        String text;
+        String html;
+    }
+}
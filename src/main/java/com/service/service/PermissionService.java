@@ -0,0 +1,66 @@
+package com.service.service;
+
+import com.service.config.PermissionEngine;
+import com.service.config.PermissionSnapshot;
+import com.service.dto.ActivityPermissionDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Loads the role / permission / activity matrix into {@link PermissionEngine} and swaps it again when the tables change.
+ */
+@Service
+@Slf4j(topic = "PERMISSION-SERVICE")
+@RequiredArgsConstructor
+public class PermissionService {
+    private static final String FROM_PERMISSIONS = " FROM tbl_role_permission_activities rpa " +
+            "INNER JOIN tbl_activities a ON rpa.activity_id = a.id " +
+            "INNER JOIN tbl_roles r ON rpa.role_id = r.id " +
+            "INNER JOIN tbl_permissions p ON rpa.permission_id = p.id " +
+            "WHERE COALESCE(r.enabled, TRUE) AND COALESCE(p.enabled, TRUE)";
+    private static final String PERMISSIONS_SQL = "SELECT CAST(a.method AS VARCHAR) AS method, a.url AS url, r.name AS role" + FROM_PERMISSIONS;
+    private static final String FINGERPRINT_SQL = "SELECT md5(COALESCE(string_agg(CAST(a.method AS VARCHAR) || ' ' || a.url || ' ' || r.name, ',' " +
+            "ORDER BY a.id, r.id, p.id), ''))" + FROM_PERMISSIONS;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PermissionEngine permissionEngine;
+
+    private volatile String fingerprint;
+
+    @PostConstruct
+    public void init() {
+        reload();
+    }
+
+    /**
+     * Compare cheap fingerprint of permission tables and reload when it changed
+     */
+    @Scheduled(fixedDelayString = "${permission.reload-interval}", initialDelayString = "${permission.reload-interval}")
+    public void reloadIfChanged() {
+        String current = jdbcTemplate.queryForObject(FINGERPRINT_SQL, String.class);
+        if (!Objects.equals(current, fingerprint)) {
+            log.info("Permission tables changed");
+            reload();
+        }
+    }
+
+    /**
+     * Load all permissions, compile and swap them
+     */
+    public synchronized void reload() {
+        log.info("Loading permissions from the database");
+
+        String current = jdbcTemplate.queryForObject(FINGERPRINT_SQL, String.class);
+        List<ActivityPermissionDTO> permissions = jdbcTemplate.query(PERMISSIONS_SQL,
+                (rs, rowNum) -> new ActivityPermissionDTO(rs.getString("method"), rs.getString("url"), rs.getString("role")));
+        permissionEngine.swap(PermissionSnapshot.compile(permissions));
+        fingerprint = current;
+    }
+}
@@ -0,0 +1,204 @@
+package com.service.service;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.service.config.TokenRevocationList;
+import com.service.model.Token;
+import com.service.repository.TokenRepo;
+import com.service.util.TokenUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.service.util.TokenUtil.digest;
+
+/**
+ * Refresh tokens kept in memory until they expire and written through to tbl_token,
+ * so a refresh only reads the database when another node issued the token or the entry was evicted.
+ * <p>
+ * tbl_token holds one row per session: a login from a known device replaces the token of that device only,
+ * other devices of the same user keep their sessions. The replaced token is revoked through tbl_revoked_tokens,
+ * so nodes still holding it in memory reject it once they polled the revocations.
+ * <p>
+ * Only the digest and revocation key (jti) of a token are stored, signed tokens are too long to store as they are.
+ */
+@Service
+@Slf4j(topic = "REFRESH-TOKEN-STORE")
+public class RefreshTokenStore {
+    // replaced still sees the row as it was before this statement, so it returns the replaced token
+    private static final String UPSERT_SQL = "WITH replaced AS (SELECT token_digest, revocation_key, expiry_date " +
+            "FROM tbl_token WHERE session_id = ?), " +
+            "upserted AS (INSERT INTO tbl_token (user_id, session_id, token_digest, revocation_key, expiry_date) " +
+            "VALUES (?, ?, ?, ?, ?) ON CONFLICT (session_id) DO UPDATE SET token_digest = EXCLUDED.token_digest, " +
+            "revocation_key = EXCLUDED.revocation_key, expiry_date = EXCLUDED.expiry_date RETURNING id) " +
+            "SELECT token_digest, revocation_key, expiry_date FROM replaced";
+
+    private final TokenRepo tokenRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final TokenRevocationList revocationList;
+    private final Cache<String, Session> cache;
+
+    public RefreshTokenStore(TokenRepo tokenRepo, JdbcTemplate jdbcTemplate, TokenRevocationList revocationList,
+                             MeterRegistry meterRegistry,
+                             @Value("${jwt.refresh.cache.maximum-size}") long maximumSize) {
+        this.tokenRepo = tokenRepo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.revocationList = revocationList;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new SessionExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "refreshTokens");
+    }
+
+    /**
+     * Insert or replace the token of a session in one statement and keep it in memory
+     *
+     * @param userId       token owner id
+     * @param username     token owner username
+     * @param sessionId    session id
+     * @param refreshToken refresh token
+     * @param expiryDate   expiry date
+     */
+    @Transactional
+    public void save(long userId, String username, String sessionId, String refreshToken, Date expiryDate) {
+        log.info("Saving refresh token of session {} to the database", sessionId);
+
+        String tokenDigest = saveToken(userId, sessionId, refreshToken, expiryDate);
+        cache.put(tokenDigest, new Session(userId, username, expiryDate.getTime()));
+    }
+
+    /**
+     * Insert or replace a token that is not kept in memory, e.g. a reset token
+     *
+     * @param userId     token owner id
+     * @param sessionId  session id
+     * @param token      raw token
+     * @param expiryDate expiry date
+     * @return digest of token
+     */
+    @Transactional
+    public String saveToken(long userId, String sessionId, String token, Date expiryDate) {
+        String tokenDigest = digest(token);
+        List<ReplacedToken> replacedTokens = jdbcTemplate.query(UPSERT_SQL,
+                (rs, rowNum) -> new ReplacedToken(rs.getString("token_digest"), rs.getString("revocation_key"), rs.getTimestamp("expiry_date")),
+                sessionId, userId, sessionId, tokenDigest, revocationKey(token), new Timestamp(expiryDate.getTime()));
+        for (ReplacedToken replacedToken : replacedTokens) {
+            if (!tokenDigest.equals(replacedToken.getTokenDigest())) {
+                cache.invalidate(replacedToken.getTokenDigest());
+                revoke(replacedToken);
+            }
+        }
+        return tokenDigest;
+    }
+
+    /**
+     * Find session of refresh token, from memory first then from the database
+     *
+     * @param refreshToken refresh token
+     * @return session or null when token is unknown or expired
+     */
+    public Session find(String refreshToken) {
+        return cache.get(digest(refreshToken), this::load);
+    }
+
+    /**
+     * Forget a token digest, e.g. after its row was overwritten
+     *
+     * @param tokenDigest token digest
+     */
+    public void evict(String tokenDigest) {
+        cache.invalidate(tokenDigest);
+    }
+
+    /**
+     * Forget every token of a user, e.g. after its sessions were revoked
+     *
+     * @param username username
+     */
+    public void evictUser(String username) {
+        cache.asMap().values().removeIf(session -> session.getUsername().equals(username));
+    }
+
+    /**
+     * Key a JWT is revoked by, other tokens such as reset tokens are only looked up in tbl_token
+     */
+    private static String revocationKey(String token) {
+        try {
+            return TokenUtil.revocationKey(JWT.decode(token), token);
+        } catch (JWTDecodeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Revoke a replaced JWT until it expires
+     */
+    private void revoke(ReplacedToken replacedToken) {
+        if (replacedToken.getRevocationKey() == null || replacedToken.getExpiryDate() == null
+                || replacedToken.getExpiryDate().before(new Date())) {
+            return;
+        }
+        long expiresAt = replacedToken.getExpiryDate().getTime();
+        jdbcTemplate.update(RevocationService.REVOKE_TOKEN_SQL, replacedToken.getRevocationKey(), new Timestamp(expiresAt));
+        revocationList.revoke(replacedToken.getRevocationKey(), expiresAt);
+    }
+
+    private Session load(String tokenDigest) {
+        log.info("Loading refresh token from the database");
+
+        Token token = tokenRepo.findByTokenDigest(tokenDigest);
+        if (token == null || token.getExpiryDate() == null || token.getExpiryDate().before(new Date())) {
+            return null;
+        }
+        return new Session(token.getUser().getId(), token.getUser().getUsername(), token.getExpiryDate().getTime());
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Session {
+        private final long userId;
+        private final String username;
+        private final long expiresAt;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class ReplacedToken {
+        private final String tokenDigest;
+        private final String revocationKey;
+        private final Date expiryDate;
+    }
+
+    private static class SessionExpiry implements Expiry<String, Session> {
+        @Override
+        public long expireAfterCreate(String key, Session session, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, session.getExpiresAt() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Session session, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, session, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Session session, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
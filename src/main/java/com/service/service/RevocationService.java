@@ -0,0 +1,172 @@
+package com.service.service;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.service.config.TokenRevocationList;
+import com.service.util.TokenUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Records revoked tokens and users in the database and keeps {@link TokenRevocationList} of every node in sync.
+ * <p>
+ * Each node polls rows changed since its last poll, by database clock and with an overlap so that rows committed
+ * late by a long transaction are not missed. A periodic full load drops tokens that expired in the meantime.
+ */
+@Service
+@Slf4j(topic = "REVOCATION-SERVICE")
+@RequiredArgsConstructor
+public class RevocationService {
+    private static final long POLL_OVERLAP = TimeUnit.SECONDS.toMillis(30);
+
+    static final String REVOKE_TOKEN_SQL = "INSERT INTO tbl_revoked_tokens (jti, expiry_date) VALUES (?, ?) " +
+            "ON CONFLICT (jti) DO NOTHING";
+    private static final String REVOKE_USER_SQL = "INSERT INTO tbl_user_revocations (username, not_before) VALUES (?, ?) " +
+            "ON CONFLICT (username) DO UPDATE SET not_before = EXCLUDED.not_before, updated_date = CURRENT_TIMESTAMP";
+    private static final String DELETE_USER_TOKENS_SQL = "DELETE FROM tbl_token WHERE user_id = ?";
+    private static final String DELETE_TOKEN_SQL = "DELETE FROM tbl_token WHERE token_digest = ?";
+    private static final String REVOKED_TOKENS_SQL = "SELECT jti, expiry_date FROM tbl_revoked_tokens " +
+            "WHERE revoked_date > ? AND expiry_date > CURRENT_TIMESTAMP";
+    private static final String REVOKED_USERS_SQL = "SELECT username, not_before FROM tbl_user_revocations " +
+            "WHERE updated_date > ? AND not_before > ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TokenRevocationList revocationList;
+    private final RefreshTokenStore refreshTokenStore;
+
+    @Value("${jwt.refresh.token.validity}")
+    private long jwtRefreshTokenValidity;
+
+    private volatile Timestamp lastPoll;
+
+    @PostConstruct
+    public void init() {
+        rebuild();
+    }
+
+    /**
+     * Check token against the revocation list
+     *
+     * @param decodedJWT decoded token
+     * @param token      raw token
+     * @return true when token was revoked
+     */
+    public boolean isRevoked(DecodedJWT decodedJWT, String token) {
+        return revocationList.isRevoked(TokenUtil.revocationKey(decodedJWT, token), decodedJWT.getSubject(), TokenUtil.issuedAt(decodedJWT));
+    }
+
+    /**
+     * Revoke a token until it expires, a refresh token is also removed from tbl_token
+     *
+     * @param decodedJWT verified token
+     * @param token      raw token
+     */
+    @Transactional
+    public void revokeToken(DecodedJWT decodedJWT, String token) {
+        String revocationKey = TokenUtil.revocationKey(decodedJWT, token);
+        long expiresAt = decodedJWT.getExpiresAt() == null ? System.currentTimeMillis() : decodedJWT.getExpiresAt().getTime();
+        log.info("Revoking token {} of {}", revocationKey, decodedJWT.getSubject());
+
+        jdbcTemplate.update(REVOKE_TOKEN_SQL, revocationKey, new Timestamp(expiresAt));
+        String tokenDigest = TokenUtil.digest(token);
+        jdbcTemplate.update(DELETE_TOKEN_SQL, tokenDigest);
+        refreshTokenStore.evict(tokenDigest);
+        revocationList.revoke(revocationKey, expiresAt);
+    }
+
+    /**
+     * Revoke every access and refresh token issued to a user so far
+     *
+     * @param userId   user id
+     * @param username username, the subject of its tokens
+     */
+    @Transactional
+    public void revokeUser(long userId, String username) {
+        log.info("Revoking all sessions of user {}", username);
+
+        // iat has second precision
+        long notBefore = TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        jdbcTemplate.update(REVOKE_USER_SQL, username, new Timestamp(notBefore));
+        jdbcTemplate.update(DELETE_USER_TOKENS_SQL, userId);
+        refreshTokenStore.evictUser(username);
+        revocationList.revokeUser(username, notBefore);
+    }
+
+    /**
+     * Revoke access tokens of many users in one batch, e.g. after they were deleted together with their refresh tokens
+     *
+     * @param usernames usernames, the subjects of their tokens
+     */
+    public void revokeUsers(Collection<String> usernames) {
+        if (usernames.isEmpty()) {
+            return;
+        }
+        log.info("Revoking all sessions of {} users", usernames.size());
+
+        long notBefore = TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        Timestamp timestamp = new Timestamp(notBefore);
+        jdbcTemplate.batchUpdate(REVOKE_USER_SQL, usernames.stream()
+                .map(username -> new Object[]{username, timestamp})
+                .collect(Collectors.toList()));
+        for (String username : usernames) {
+            refreshTokenStore.evictUser(username);
+            revocationList.revokeUser(username, notBefore);
+        }
+    }
+
+    /**
+     * Apply revocations made by other nodes since the last poll
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-interval}", initialDelayString = "${jwt.revocation.refresh-interval}")
+    public synchronized void refresh() {
+        Timestamp now = jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP", Timestamp.class);
+        Timestamp since = new Timestamp(lastPoll.getTime() - POLL_OVERLAP);
+
+        jdbcTemplate.query(REVOKED_TOKENS_SQL, rs -> {
+            revocationList.revoke(rs.getString("jti"), rs.getTimestamp("expiry_date").getTime());
+        }, since);
+        jdbcTemplate.query(REVOKED_USERS_SQL, rs -> {
+            revocationList.revokeUser(rs.getString("username"), rs.getTimestamp("not_before").getTime());
+        }, since, oldestLiveToken());
+        lastPoll = now;
+    }
+
+    /**
+     * Load all live revocations and swap them, expired ones are left behind
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.rebuild-interval}", initialDelayString = "${jwt.revocation.rebuild-interval}")
+    public synchronized void rebuild() {
+        log.info("Loading revoked tokens from the database");
+
+        Timestamp now = jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP", Timestamp.class);
+        Map<String, Long> tokens = new HashMap<>();
+        jdbcTemplate.query(REVOKED_TOKENS_SQL, rs -> {
+            tokens.put(rs.getString("jti"), rs.getTimestamp("expiry_date").getTime());
+        }, new Timestamp(0));
+        Map<String, Long> users = new HashMap<>();
+        jdbcTemplate.query(REVOKED_USERS_SQL, rs -> {
+            users.put(rs.getString("username"), rs.getTimestamp("not_before").getTime());
+        }, new Timestamp(0), oldestLiveToken());
+        revocationList.replace(tokens, users);
+        lastPoll = now;
+    }
+
+    /**
+     * A user revocation older than the longest token validity can not match any token anymore
+     */
+    private Timestamp oldestLiveToken() {
+        return new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(jwtRefreshTokenValidity));
+    }
+}
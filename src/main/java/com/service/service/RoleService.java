@@ -0,0 +1,98 @@
+package com.service.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.service.dto.UserRoleDTO;
+import com.service.repository.UserRepo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Roles of users kept in memory in front of {@link UserRepo#findRoleByUsername(String)}.
+ * Entries are invalidated when this node changes a user, and an optional full reload
+ * makes every node converge after role assignments were changed in the database.
+ */
+@Service
+@Slf4j(topic = "ROLE-SERVICE")
+public class RoleService {
+    private final UserRepo userRepo;
+    private final LoadingCache<String, List<String>> cache;
+    private final Timer reloadTimer;
+    private final boolean reloadEnabled;
+
+    public RoleService(UserRepo userRepo, MeterRegistry meterRegistry,
+                       @Value("${role.cache.maximum-size}") long maximumSize,
+                       @Value("${role.cache.reload-enabled}") boolean reloadEnabled) {
+        this.userRepo = userRepo;
+        this.reloadEnabled = reloadEnabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(username -> List.copyOf(userRepo.findRoleByUsername(username)));
+        this.reloadTimer = Timer.builder("role.cache.reload")
+                .description("Time to reload roles of cached users")
+                .register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "userRoles");
+    }
+
+    /**
+     * Get roles of user
+     *
+     * @param username username
+     * @return role names
+     */
+    public List<String> getRoles(String username) {
+        return cache.get(username);
+    }
+
+    /**
+     * Forget roles of user after user or its role mapping changed
+     *
+     * @param username username
+     */
+    public void invalidate(String username) {
+        if (username != null) {
+            cache.invalidate(username);
+        }
+    }
+
+    /**
+     * Forget roles of all users
+     */
+    public void invalidateAll() {
+        log.info("Invalidating roles of all users");
+        cache.invalidateAll();
+    }
+
+    @Scheduled(fixedDelayString = "${role.cache.reload-interval}", initialDelayString = "${role.cache.reload-interval}")
+    public void scheduledReload() {
+        if (reloadEnabled) {
+            reload();
+        }
+    }
+
+    /**
+     * Reload roles of every cached user with a single query
+     */
+    public void reload() {
+        reloadTimer.record(() -> {
+            Map<String, List<String>> roles = new HashMap<>();
+            for (UserRoleDTO userRole : userRepo.findAllUserRoles()) {
+                roles.computeIfAbsent(userRole.getUsername(), k -> new ArrayList<>()).add(userRole.getRole());
+            }
+
+            Set<String> usernames = new HashSet<>(cache.asMap().keySet());
+            for (String username : usernames) {
+                cache.put(username, List.copyOf(roles.getOrDefault(username, Collections.emptyList())));
+            }
+            log.info("Reloaded roles of {} cached users", usernames.size());
+        });
+    }
+}
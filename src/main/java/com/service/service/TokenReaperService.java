@@ -0,0 +1,79 @@
+package com.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes expired refresh / reset tokens and revocations nobody can match anymore.
+ * <p>
+ * Rows go in chunks, each chunk is one short statement in its own transaction, so the reaper never holds many
+ * row locks for long. Rows locked by another node running at the same time are skipped, not waited for.
+ */
+@Service
+@Slf4j(topic = "TOKEN-REAPER")
+public class TokenReaperService {
+    private static final String DELETE_TOKENS_SQL = "DELETE FROM tbl_token WHERE ctid IN " +
+            "(SELECT ctid FROM tbl_token WHERE expiry_date < CURRENT_TIMESTAMP LIMIT ? FOR UPDATE SKIP LOCKED)";
+    private static final String DELETE_REVOKED_TOKENS_SQL = "DELETE FROM tbl_revoked_tokens WHERE ctid IN " +
+            "(SELECT ctid FROM tbl_revoked_tokens WHERE expiry_date < CURRENT_TIMESTAMP LIMIT ? FOR UPDATE SKIP LOCKED)";
+    private static final String DELETE_USER_REVOCATIONS_SQL = "DELETE FROM tbl_user_revocations WHERE ctid IN " +
+            "(SELECT ctid FROM tbl_user_revocations WHERE not_before < ? LIMIT ? FOR UPDATE SKIP LOCKED)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Timer runTimer;
+    private final int chunkSize;
+    private final long refreshTokenValidity;
+
+    public TokenReaperService(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                              @Value("${token.reaper.chunk-size}") int chunkSize,
+                              @Value("${jwt.refresh.token.validity}") long refreshTokenValidity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.runTimer = Timer.builder("token.reaper.run").register(meterRegistry);
+        this.chunkSize = chunkSize;
+        this.refreshTokenValidity = refreshTokenValidity;
+    }
+
+    /**
+     * Delete all expired rows, chunk by chunk
+     */
+    @Scheduled(fixedDelayString = "${token.reaper.interval}", initialDelayString = "${token.reaper.interval}")
+    public void reap() {
+        runTimer.record(() -> {
+            long tokens = deleteInChunks("tbl_token", DELETE_TOKENS_SQL);
+            long revokedTokens = deleteInChunks("tbl_revoked_tokens", DELETE_REVOKED_TOKENS_SQL);
+            // a user revocation older than the longest token validity can not match any token
+            Timestamp oldestLiveToken = new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(refreshTokenValidity));
+            long userRevocations = deleteInChunks("tbl_user_revocations", DELETE_USER_REVOCATIONS_SQL, oldestLiveToken);
+            if (tokens + revokedTokens + userRevocations > 0) {
+                log.info("Deleted {} expired tokens, {} revoked tokens and {} user revocations", tokens, revokedTokens, userRevocations);
+            }
+        });
+    }
+
+    private long deleteInChunks(String table, String sql, Object... params) {
+        Counter deleted = Counter.builder("token.reaper.deleted").tag("table", table).register(meterRegistry);
+        Object[] args = new Object[params.length + 1];
+        System.arraycopy(params, 0, args, 0, params.length);
+        args[params.length] = chunkSize;
+
+        long total = 0;
+        int count;
+        do {
+            count = jdbcTemplate.update(sql, args);
+            deleted.increment(count);
+            total += count;
+        } while (count == chunkSize);
+        return total;
+    }
+}
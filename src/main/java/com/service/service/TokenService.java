@@ -1,33 +1,37 @@
 package com.service.service;
 
 import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.service.api.response.TokenResponse;
+import com.service.config.JwtKeyRing;
 import com.service.model.AppUser;
+import com.service.model.AppUserDetails;
 import com.service.model.Token;
 import com.service.repository.TokenRepo;
-import com.service.repository.UserRepo;
 import com.service.util.ApiConst;
+import com.service.util.TokenUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j(topic = "TOKEN-SERVICE")
 @RequiredArgsConstructor
 public class TokenService {
+    private static final String RESET_SESSION_SUFFIX = ":reset";
+
     private final TokenRepo tokenRepo;
-    private final UserRepo userRepo;
+    private final RefreshTokenStore refreshTokenStore;
+    private final JwtKeyRing keyRing;
 
-    @Value("${jwt.secret}")
-    private String secretKey;
     @Value("${jwt.token.validity}")
     private long jwtTokenValidity;
     @Value("${jwt.refresh.token.validity}")
@@ -39,28 +43,25 @@ public class TokenService {
     /**
      * Generate token information
      *
-     * @param user
-     * @param url
-     * @return
+     * @param user     authenticated user
+     * @param url      issuer
+     * @param deviceId device of client, a login from the same device replaces its previous session
+     * @return access and refresh token
      */
-    public TokenResponse generateToken(User user, String url) {
-        Algorithm algorithm = Algorithm.HMAC256(secretKey.getBytes());
+    public TokenResponse generateToken(AppUserDetails user, String url, String deviceId) {
         List<String> authorities = user.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList());
-        String accessToken = JWT.create()
-                .withSubject(user.getUsername())
-                .withExpiresAt(new Date(System.currentTimeMillis() + (jwtTokenValidity * 60 * 1000)))
-                .withIssuer(url)
-                .withClaim(ApiConst.USER_ROLE, authorities)
-                .sign(algorithm);
+        String accessToken = generateAccessToken(user.getId(), user.getUsername(), authorities, url);
         Date expiryDate = new Date(System.currentTimeMillis() + (jwtRefreshTokenValidity * 24 * 60 * 60 * 1000));
 
-        String refreshToken = JWT.create()
+        String refreshToken = keyRing.sign(JWT.create()
+                .withJWTId(UUID.randomUUID().toString())
                 .withSubject(user.getUsername())
+                .withClaim(ApiConst.USER_ID, user.getId())
+                .withIssuedAt(new Date())
                 .withExpiresAt(expiryDate)
-                .withIssuer(url)
-                .sign(algorithm);
+                .withIssuer(url));
 
-        saveRefreshToken(user.getUsername(), refreshToken, expiryDate);
+        refreshTokenStore.save(user.getId(), user.getUsername(), sessionId(user.getId(), deviceId), refreshToken, expiryDate);
 
         return TokenResponse.builder()
                 .username(user.getUsername())
@@ -70,6 +71,36 @@ public class TokenService {
                 .build();
     }
 
+    /**
+     * Generate access token
+     *
+     * @param userId      user id
+     * @param username    username
+     * @param authorities user authorities
+     * @param url         issuer
+     * @return signed access token
+     */
+    public String generateAccessToken(long userId, String username, List<String> authorities, String url) {
+        return keyRing.sign(JWT.create()
+                .withJWTId(UUID.randomUUID().toString())
+                .withSubject(username)
+                .withClaim(ApiConst.USER_ID, userId)
+                .withIssuedAt(new Date())
+                .withExpiresAt(new Date(System.currentTimeMillis() + (jwtTokenValidity * 60 * 1000)))
+                .withIssuer(url)
+                .withClaim(ApiConst.USER_ROLE, authorities));
+    }
+
+    /**
+     * Verify refresh token signature and expiry
+     *
+     * @param token refresh token
+     * @return decoded token
+     */
+    public DecodedJWT verifyToken(String token) {
+        return keyRing.verify(token);
+    }
+
     /**
      * Find token by token string
      *
@@ -77,34 +108,17 @@ public class TokenService {
      * @return token
      */
     public Token findByToken(String token) {
-        return tokenRepo.findByToken(token);
+        return tokenRepo.findByTokenDigest(TokenUtil.digest(token));
     }
 
     /**
-     * Save refresh token after login successful
+     * Find refresh token session, served from memory in the common case
      *
-     * @param username username
      * @param refreshToken refresh token
-     * @param expiryDate expiry date
+     * @return session or null when refresh token is unknown
      */
-    public void saveRefreshToken(String username, String refreshToken, Date expiryDate) {
-        log.info("Saving refresh token to the database");
-
-        AppUser appUser = userRepo.findByUsername(username);
-
-        Token ref = tokenRepo.findByUserId(appUser.getId());
-        if (ref != null) {
-            ref.setToken(refreshToken);
-            ref.setExpiryDate(expiryDate);
-            tokenRepo.save(ref);
-        } else {
-            Token token = Token.builder()
-                    .user(appUser)
-                    .token(refreshToken)
-                    .expiryDate(expiryDate)
-                    .build();
-            tokenRepo.save(token);
-        }
+    public RefreshTokenStore.Session findRefreshSession(String refreshToken) {
+        return refreshTokenStore.find(refreshToken);
     }
 
     /**
@@ -117,18 +131,17 @@ public class TokenService {
         // Will be expired after few minutes
         Date expiryDate = new Date(System.currentTimeMillis() + jwtResetTokenValidity * 60 * 1000);
 
-        Token token = tokenRepo.findByUserId(appUser.getId());
-        if (token == null) {
-            Token refreshToken = Token.builder()
-                    .user(appUser)
-                    .token(resetToken)
-                    .expiryDate(expiryDate)
-                    .build();
-            tokenRepo.save(refreshToken);
-        } else {
-            token.setToken(resetToken);
-            token.setExpiryDate(expiryDate);
-            tokenRepo.save(token);
+        // one pending reset token per user, next request replaces it
+        refreshTokenStore.saveToken(appUser.getId(), appUser.getId() + RESET_SESSION_SUFFIX, resetToken, expiryDate);
+    }
+
+    /**
+     * Session of a device is stable so a new login replaces it, without device every login opens a new session
+     */
+    private static String sessionId(long userId, String deviceId) {
+        if (StringUtils.hasText(deviceId)) {
+            return TokenUtil.digest(userId + ":" + deviceId);
         }
+        return UUID.randomUUID().toString();
     }
 }
@@ -1,47 +1,532 @@
 package com.service.service;
 
-import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CannedAccessControlList;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.service.config.Translator;
 import com.service.dto.FileDTO;
-import org.joda.time.LocalDate;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.service.exception.BadRequestException;
+import com.service.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
+/**
+ * Streams files into S3 while they are read. A file larger than one part becomes a multipart upload whose parts
+ * are sent in parallel by the upload threads, while the request thread goes on reading and hashing the next part.
+ * <p>
+ * Parts are read into buffers of a pool shared by all uploads, so memory stays at {@code buffers * partSize}
+ * however many files come in at once; a reader waits for a free buffer up to {@code bufferTimeout}.
+ * A failed multipart upload is aborted so its parts are not kept (and billed) by S3. Files are limited to
+ * {@code maxSize}: a larger declared length is refused before anything is read, and a stream going past it anyway
+ * is aborted as soon as it does.
+ * <p>
+ * Files are stored once under the SHA-256 of their content, {@code sha256/<hex>}, and every upload gets its own
+ * reference through {@link FileService}.
+ * When the hash is known before the transfer, from a spooled file or from the client, a file already stored is not
+ * sent again. A stream without a trusted hash goes to a staging key first and is copied within S3 once its hash
+ * is known, so a stored object never holds anything but the content of its hash.
+ */
 @Service
-public class UploadService {
-    @Value("${cloud.aws.credentials.bucketName}")
-    private String bucketName;
+@Slf4j(topic = "UPLOAD-SERVICE")
+public class UploadService implements DisposableBean {
+    // S3 limit of parts per upload
+    private static final int MAX_PARTS = 10_000;
+    // S3 limit of a single copy request, larger objects are copied in parts
+    private static final long MAX_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final long COPY_PART_SIZE = 512L * 1024 * 1024;
+    private static final String CONTENT_PREFIX = "sha256/";
+    private static final String STAGING_PREFIX = "staging/";
+    private static final Pattern SHA256 = Pattern.compile("^[0-9a-f]{64}$");
 
-    @Autowired
-    private AmazonS3Client amazonS3Client;
+    private final AmazonS3 amazonS3;
+    private final FileService fileService;
+    private final String bucketName;
+    private final int partSize;
+    private final long maxSize;
+    private final long bufferTimeout;
+    private final BlockingQueue<byte[]> buffers;
+    private final ThreadPoolExecutor executor;
+    private final Counter deduplicatedCounter;
 
-    public FileDTO uploadFile(MultipartFile file){
-        String key = generateFileName(file);
+    public UploadService(AmazonS3 amazonS3, FileService fileService, MeterRegistry meterRegistry,
+                         @Value("${cloud.aws.credentials.bucketName}") String bucketName,
+                         @Value("${cloud.aws.s3.upload.part-size}") int partSize,
+                         @Value("${cloud.aws.s3.upload.threads}") int threads,
+                         @Value("${cloud.aws.s3.upload.buffers}") int bufferCount,
+                         @Value("${cloud.aws.s3.upload.buffer-timeout}") long bufferTimeout,
+                         @Value("${cloud.aws.s3.upload.max-size}") long maxSize) {
+        this.amazonS3 = amazonS3;
+        this.fileService = fileService;
+        this.bucketName = bucketName;
+        this.partSize = partSize;
+        this.maxSize = maxSize;
+        this.bufferTimeout = bufferTimeout;
+        // allocated on first use, a node that never uploads never holds them
+        this.buffers = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            buffers.add(new byte[0]);
+        }
+        // buffers bound the parts in flight, so the queue of the executor never holds more than there are buffers
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("s3-upload-"));
+        new ExecutorServiceMetrics(executor, "s3Upload", Tags.empty()).bindTo(meterRegistry);
+        Gauge.builder("s3.upload.buffers", buffers, BlockingQueue::size)
+                .description("Part buffers free for uploads")
+                .register(meterRegistry);
+        this.deduplicatedCounter = Counter.builder("s3.upload.deduplicated")
+                .description("Uploads of content already stored")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Upload a file spooled by the container, hashed locally first so a stored one is not sent again
+     *
+     * @param file  uploaded file
+     * @param owner username of the uploader
+     * @return reference to the stored file
+     * @throws BadRequestException file too large
+     */
+    public FileDTO uploadFile(MultipartFile file, String owner) {
+        if (file.getSize() > maxSize) {
+            throw new BadRequestException(Translator.toLocale("file-size-invalid"));
+        }
+        String name = file.getOriginalFilename();
+        String sha256;
+        try (InputStream in = file.getInputStream()) {
+            sha256 = hash(in);
+        } catch (IOException e) {
+            throw uploadFailed(name, e);
+        }
+        FileDTO stored = deduplicate(sha256, owner, name);
+        if (stored != null) {
+            return stored;
+        }
+
+        // the hash is trusted, the file goes to its final key at once
+        String key = CONTENT_PREFIX + sha256;
+        long size;
+        try (InputStream in = file.getInputStream()) {
+            size = put(key, file.getContentType(), in, null, CannedAccessControlList.PublicRead);
+        } catch (IOException e) {
+            throw uploadFailed(key, e);
+        }
+        return fileService.record(key, file.getContentType(), size, sha256, owner, name);
+    }
+
+    /**
+     * Upload a file as it is read, readable by everyone
+     *
+     * @param name        original file name
+     * @param contentType content type, nullable
+     * @param sha256        hex SHA-256 of the content claimed by the client, nullable
+     * @param contentLength length declared by the client, -1 when unknown
+     * @param owner         username of the uploader
+     * @param in            content, read to its end but not closed, not read at all when the claimed content is stored
+     * @return reference to the stored file
+     * @throws BadRequestException         content does not match the claimed hash, or file too large
+     * @throws ServiceUnavailableException no part buffer got free in time
+     */
+    public FileDTO uploadFile(String name, String contentType, String sha256, long contentLength, String owner,
+                              InputStream in) {
+        if (contentLength > maxSize) {
+            throw new BadRequestException(Translator.toLocale("file-size-invalid"));
+        }
+        if (sha256 != null) {
+            if (!SHA256.matcher(sha256).matches()) {
+                throw new BadRequestException(Translator.toLocale("file-hash-invalid"));
+            }
+            FileDTO stored = deduplicate(sha256, owner, name);
+            if (stored != null) {
+                return stored;
+            }
+        }
+
+        // the hash is known once the body was read, the file waits under a staging key meanwhile
+        String staging = STAGING_PREFIX + UUID.randomUUID();
+        MessageDigest digest = digest();
+        long size = put(staging, contentType, new LimitedInputStream(in, maxSize), digest, null);
+        String actual = Hex.encodeHexString(digest.digest());
+        try {
+            if (sha256 != null && !sha256.equals(actual)) {
+                throw new BadRequestException(Translator.toLocale("file-hash-invalid"));
+            }
+            FileDTO stored = deduplicate(actual, owner, name);
+            if (stored != null) {
+                return stored;
+            }
+            String key = CONTENT_PREFIX + actual;
+            copy(staging, key, size);
+            return fileService.record(key, contentType, size, actual, owner, name);
+        } finally {
+            delete(staging);
+        }
+    }
+
+    /**
+     * Reference the stored file of a hash, null when there is none
+     */
+    private FileDTO deduplicate(String sha256, String owner, String name) {
+        FileDTO stored = fileService.reference(sha256, owner, name);
+        if (stored != null) {
+            log.info("Skipping upload of {}, stored content referenced as file {}", name, stored.getId());
+            deduplicatedCounter.increment();
+        }
+        return stored;
+    }
+
+    /**
+     * Upload a stream to a key, hashing it on the way when a digest is given
+     *
+     * @return bytes uploaded
+     */
+    private long put(String key, String contentType, InputStream in, MessageDigest digest, CannedAccessControlList acl) {
         ObjectMetadata metadata = new ObjectMetadata();
-        metadata.setContentLength(file.getSize());
-        metadata.setContentType(file.getContentType());
+        metadata.setContentType(contentType);
 
-        try{
-            amazonS3Client.putObject(bucketName, key, file.getInputStream(),metadata);
-        }catch (IOException e){
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, Translator.toLocale("file-upload-fail"));
+        byte[] first = borrow();
+        int length;
+        try {
+            length = read(in, first, digest);
+        } catch (IOException e) {
+            release(first);
+            throw uploadFailed(key, e);
+        }
+
+        if (length < partSize) {
+            // fits one part, a single request is cheaper
+            log.info("Uploading {} of {} bytes", key, length);
+            metadata.setContentLength(length);
+            try {
+                amazonS3.putObject(new PutObjectRequest(bucketName, key, new ByteArrayInputStream(first, 0, length), metadata)
+                        .withCannedAcl(acl));
+                return length;
+            } catch (AmazonClientException e) {
+                throw uploadFailed(key, e);
+            } finally {
+                release(first);
+            }
+        }
+        try {
+            // the first buffer is handed over with the first part
+            return uploadParts(key, metadata, acl, in, digest, first);
+        } catch (IOException | AmazonClientException e) {
+            throw uploadFailed(key, e);
+        }
+    }
+
+    /**
+     * Server side copy, the content does not go through this service again
+     */
+    private void copy(String source, String target, long size) {
+        try {
+            if (size <= MAX_COPY_SIZE) {
+                amazonS3.copyObject(new CopyObjectRequest(bucketName, source, bucketName, target)
+                        .withCannedAccessControlList(CannedAccessControlList.PublicRead));
+                return;
+            }
+            copyParts(source, target, size);
+        } catch (AmazonClientException e) {
+            throw uploadFailed(target, e);
         }
-        amazonS3Client.setObjectAcl(bucketName, key, CannedAccessControlList.PublicRead);
-        FileDTO fileDTO = new FileDTO();
-        fileDTO.setName(key);
-        fileDTO.setUrl(amazonS3Client.getResourceUrl(bucketName, key));
-        return fileDTO;
     }
-    private String generateFileName(MultipartFile multiPart) {
-        return new LocalDate() + "-" + multiPart.getOriginalFilename().replace(" ", "_");
+
+    private void copyParts(String source, String target, long size) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(amazonS3.getObjectMetadata(bucketName, source).getContentType());
+        String uploadId = amazonS3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, target, metadata)
+                .withCannedACL(CannedAccessControlList.PublicRead)).getUploadId();
+        try {
+            List<PartETag> eTags = new ArrayList<>();
+            for (long first = 0; first < size; first += COPY_PART_SIZE) {
+                eTags.add(amazonS3.copyPart(new CopyPartRequest()
+                        .withSourceBucketName(bucketName)
+                        .withSourceKey(source)
+                        .withDestinationBucketName(bucketName)
+                        .withDestinationKey(target)
+                        .withUploadId(uploadId)
+                        .withFirstByte(first)
+                        .withLastByte(Math.min(first + COPY_PART_SIZE, size) - 1)
+                        .withPartNumber(eTags.size() + 1)).getPartETag());
+            }
+            amazonS3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, target, uploadId, eTags));
+        } catch (AmazonClientException e) {
+            abort(target, uploadId, List.of(), new AtomicBoolean());
+            throw e;
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            amazonS3.deleteObject(bucketName, key);
+        } catch (AmazonClientException e) {
+            // left to the lifecycle rule of the staging prefix
+            log.error("Can not delete {}: {}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Multipart upload starting with a full first part, which is given to the upload threads like every other part
+     */
+    private long uploadParts(String key, ObjectMetadata metadata, CannedAccessControlList acl, InputStream in,
+                             MessageDigest digest, byte[] first) throws IOException {
+        String uploadId;
+        try {
+            uploadId = amazonS3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key, metadata)
+                    .withCannedACL(acl)).getUploadId();
+        } catch (RuntimeException e) {
+            release(first);
+            throw e;
+        }
+        log.info("Uploading {} in parts as {}", key, uploadId);
+
+        List<Future<PartETag>> parts = new ArrayList<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        long size = 0;
+        try {
+            byte[] buffer = first;
+            int length = partSize;
+            while (length > 0) {
+                if (parts.size() == MAX_PARTS) {
+                    release(buffer);
+                    throw new IOException("File has more than " + MAX_PARTS + " parts");
+                }
+                parts.add(submitPart(key, uploadId, parts.size() + 1, buffer, length, aborted));
+                size += length;
+                if (length < partSize) {
+                    break;
+                }
+                buffer = borrow();
+                try {
+                    length = read(in, buffer, digest);
+                } catch (IOException e) {
+                    release(buffer);
+                    throw e;
+                }
+                if (length == 0) {
+                    release(buffer);
+                }
+            }
+
+            List<PartETag> eTags = new ArrayList<>(parts.size());
+            for (Future<PartETag> part : parts) {
+                eTags.add(part.get());
+            }
+            eTags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+            amazonS3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, eTags));
+            log.info("Uploaded {} of {} bytes in {} parts", key, size, eTags.size());
+            return size;
+        } catch (ExecutionException e) {
+            abort(key, uploadId, parts, aborted);
+            throw unwrap(e);
+        } catch (IOException | RuntimeException e) {
+            abort(key, uploadId, parts, aborted);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(key, uploadId, parts, aborted);
+            throw new IOException("Interrupted while uploading " + key, e);
+        }
     }
 
+    private Future<PartETag> submitPart(String key, String uploadId, int partNumber, byte[] buffer, int length,
+                                        AtomicBoolean aborted) {
+        // tasks are never cancelled, a task that has not run yet still has to give its buffer back
+        return executor.submit(() -> {
+            try {
+                if (aborted.get()) {
+                    return null;
+                }
+                return amazonS3.uploadPart(new UploadPartRequest()
+                        .withBucketName(bucketName)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withInputStream(new ByteArrayInputStream(buffer, 0, length))
+                        .withPartSize(length)).getPartETag();
+            } finally {
+                release(buffer);
+            }
+        });
+    }
+
+    /**
+     * Abort once the parts in flight are done, a part finishing after the abort would be kept by S3
+     */
+    private void abort(String key, String uploadId, List<Future<PartETag>> parts, AtomicBoolean aborted) {
+        aborted.set(true);
+        for (Future<PartETag> part : parts) {
+            try {
+                part.get();
+            } catch (ExecutionException e) {
+                // reported by the first failed part already
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+            log.warn("Aborted upload {} of {}", uploadId, key);
+        } catch (AmazonClientException e) {
+            log.error("Can not abort upload {} of {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    private RuntimeException uploadFailed(String key, Exception e) {
+        if (e instanceof SizeLimitExceededException) {
+            log.warn("Refusing upload {}, larger than {} bytes", key, maxSize);
+            return new BadRequestException(Translator.toLocale("file-size-invalid"));
+        }
+        log.error("Can not upload {}: {}", key, e.getMessage());
+        return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, Translator.toLocale("file-upload-fail"));
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        return e.getCause() instanceof RuntimeException
+                ? (RuntimeException) e.getCause() : new AmazonClientException(e.getCause());
+    }
+
+    private byte[] borrow() {
+        byte[] buffer;
+        try {
+            buffer = buffers.poll(bufferTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            buffer = null;
+        }
+        if (buffer == null) {
+            throw new ServiceUnavailableException(Translator.toLocale("file-upload-busy"));
+        }
+        return buffer.length == partSize ? buffer : new byte[partSize];
+    }
+
+    private void release(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+
+    /**
+     * Fill the buffer unless the stream ends first, and hash what was read when a digest is given
+     *
+     * @return bytes read
+     */
+    private static int read(InputStream in, byte[] buffer, MessageDigest digest) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) >= 0) {
+            length += read;
+        }
+        if (digest != null) {
+            digest.update(buffer, 0, length);
+        }
+        return length;
+    }
+
+    /**
+     * @return hex SHA-256 of the stream
+     */
+    private static String hash(InputStream in) throws IOException {
+        MessageDigest digest = digest();
+        byte[] buffer = new byte[StreamUtils.BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            digest.update(buffer, 0, read);
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Fails a read going past the limit, so a body larger than it declared is not read to its end first
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int read) throws SizeLimitExceededException {
+            count += read;
+            if (count > limit) {
+                throw new SizeLimitExceededException();
+            }
+        }
+    }
+
+    private static class SizeLimitExceededException extends IOException {
+    }
 }
@@ -0,0 +1,150 @@
+package com.service.service;
+
+import com.service.api.form.UserPatchForm;
+import com.service.api.response.BulkResponse;
+import com.service.config.Translator;
+import com.service.exception.ConflictException;
+import com.service.model.AppUser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.*;
+
+/**
+ * Updates and deletes many users with one statement each. Ids are bound as arrays and unnested in the database,
+ * and every id comes back with its own outcome, so a caller learns which ids failed without a second query.
+ * <p>
+ * Each statement commits on its own, caches are only invalidated once the change is visible to other readers.
+ */
+@Service
+@Slf4j(topic = "USER-BULK-SERVICE")
+public class UserBulkService {
+    // the outer SELECT still sees the rows as they were before the update, hence old_username
+    private static final String PATCH_SQL = "WITH p AS (" +
+            "SELECT * FROM unnest(?, ?, ?) AS p (id, email, username)), " +
+            "updated AS (" +
+            "UPDATE tbl_users u SET email = COALESCE(p.email, u.email), username = COALESCE(p.username, u.username), " +
+            "updated_date = CURRENT_TIMESTAMP, version = u.version + 1 FROM p WHERE u.id = p.id " +
+            "AND NOT EXISTS (SELECT 1 FROM tbl_users x WHERE x.username = p.username AND x.id <> p.id) " +
+            "RETURNING u.id, u.username, u.email) " +
+            "SELECT p.id, o.username AS old_username, o.id IS NOT NULL AS found, updated.id IS NOT NULL AS updated, " +
+            "updated.username, updated.email " +
+            "FROM p LEFT JOIN tbl_users o ON o.id = p.id LEFT JOIN updated ON updated.id = p.id";
+
+    // foreign keys are checked at the end of the statement, after the dependent rows are gone
+    private static final String DELETE_SQL = "WITH ids AS (SELECT unnest(?) AS id), " +
+            "tokens AS (DELETE FROM tbl_token t USING ids WHERE t.user_id = ids.id), " +
+            "roles AS (DELETE FROM tbl_user_roles r USING ids WHERE r.user_id = ids.id) " +
+            "DELETE FROM tbl_users u USING ids WHERE u.id = ids.id RETURNING u.id, u.username";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserCache userCache;
+    private final UserSuggestService userSuggestService;
+    private final RoleService roleService;
+    private final RevocationService revocationService;
+
+    public UserBulkService(JdbcTemplate jdbcTemplate, UserCache userCache, UserSuggestService userSuggestService,
+                           RoleService roleService, RevocationService revocationService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userCache = userCache;
+        this.userSuggestService = userSuggestService;
+        this.roleService = roleService;
+        this.revocationService = revocationService;
+    }
+
+    /**
+     * Update email and username of users, ids must be distinct
+     *
+     * @param forms changes by user id
+     * @return status per id
+     * @throws ConflictException a username was taken by a concurrent write, nothing was updated
+     */
+    public BulkResponse patch(List<UserPatchForm> forms) {
+        log.info("Updating {} users in the database", forms.size());
+
+        Long[] ids = forms.stream().map(UserPatchForm::getId).toArray(Long[]::new);
+        String[] emails = forms.stream().map(UserPatchForm::getEmail).toArray(String[]::new);
+        String[] usernames = forms.stream().map(UserPatchForm::getUsername).toArray(String[]::new);
+
+        Map<Long, String> statuses = new HashMap<>();
+        Set<Long> updated = new HashSet<>();
+        try {
+            jdbcTemplate.query((Connection connection) -> {
+                PreparedStatement statement = connection.prepareStatement(PATCH_SQL);
+                statement.setArray(1, connection.createArrayOf("bigint", ids));
+                statement.setArray(2, connection.createArrayOf("text", emails));
+                statement.setArray(3, connection.createArrayOf("text", usernames));
+                return statement;
+            }, rs -> {
+                long id = rs.getLong("id");
+                if (rs.getBoolean("updated")) {
+                    statuses.put(id, BulkResponse.UPDATED);
+                    updated.add(id);
+                    roleService.invalidate(rs.getString("old_username"));
+                    roleService.invalidate(rs.getString("username"));
+                    userSuggestService.put(AppUser.builder()
+                            .id(id)
+                            .username(rs.getString("username"))
+                            .email(rs.getString("email"))
+                            .build());
+                } else {
+                    statuses.put(id, rs.getBoolean("found") ? BulkResponse.CONFLICT : BulkResponse.NOT_FOUND);
+                }
+            });
+        } catch (DuplicateKeyException e) {
+            // NOT EXISTS does not see a username inserted by a transaction not yet committed, the index does
+            throw new ConflictException(Translator.toLocale("user-username-taken"));
+        }
+        userCache.invalidate(updated);
+
+        return response(ids, statuses);
+    }
+
+    /**
+     * Delete users together with their tokens and role assignments
+     *
+     * @param ids user ids
+     * @return status per id
+     */
+    public BulkResponse delete(List<Long> ids) {
+        log.info("Deleting {} users from the database", ids.size());
+
+        Long[] idArray = ids.toArray(new Long[0]);
+        Map<Long, String> statuses = new HashMap<>();
+        List<String> usernames = new ArrayList<>();
+        jdbcTemplate.query((Connection connection) -> {
+            PreparedStatement statement = connection.prepareStatement(DELETE_SQL);
+            statement.setArray(1, connection.createArrayOf("bigint", idArray));
+            return statement;
+        }, rs -> {
+            long id = rs.getLong("id");
+            statuses.put(id, BulkResponse.DELETED);
+            usernames.add(rs.getString("username"));
+            userSuggestService.remove(id);
+        });
+
+        // access tokens already issued must not outlive their users
+        revocationService.revokeUsers(usernames);
+        usernames.forEach(roleService::invalidate);
+        userCache.invalidate(statuses.keySet());
+
+        return response(idArray, statuses);
+    }
+
+    private static BulkResponse response(Long[] ids, Map<Long, String> statuses) {
+        List<BulkResponse.Item> items = new ArrayList<>(ids.length);
+        long succeeded = 0;
+        for (Long id : ids) {
+            String status = statuses.getOrDefault(id, BulkResponse.NOT_FOUND);
+            if (BulkResponse.UPDATED.equals(status) || BulkResponse.DELETED.equals(status)) {
+                succeeded++;
+            }
+            items.add(new BulkResponse.Item(id, status));
+        }
+        return new BulkResponse(succeeded, ids.length - succeeded, items);
+    }
+}
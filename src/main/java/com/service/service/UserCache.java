@@ -0,0 +1,281 @@
+package com.service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.service.model.AppUser;
+import com.service.repository.UserRepo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Users kept in memory by id, with username and email resolved to ids, in front of {@link UserRepo}.
+ * <p>
+ * Writers call {@link #invalidate(long)} after their change is saved: the entry is dropped here and a
+ * {@code pg_notify} on {@value #CHANNEL} tells every other node to drop it too. Each node listens on its own
+ * connection and clears the whole cache whenever it had to reconnect, since notifications sent meanwhile are lost.
+ * A lookup by username or email counts invalidations while it loads and does not cache its row when one happened
+ * meanwhile, since the row may have been read before the change. The id is only known once loaded, so one counter
+ * covers every id; a skipped put only costs the next lookup a load. Entries also expire after a while.
+ * <p>
+ * Callers get copies and may change them freely.
+ */
+@Service
+@Slf4j(topic = "USER-CACHE")
+public class UserCache implements DisposableBean {
+    private static final String CHANNEL = "user_cache";
+    private static final String ALL = "*";
+    private static final int MAX_PAYLOAD = 7000;
+    private static final int POLL_TIMEOUT = 1000;
+    private static final long RECONNECT_DELAY = TimeUnit.SECONDS.toMillis(5);
+
+    private final UserRepo userRepo;
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Cache<Long, AppUser> users;
+    private final Cache<String, Long> usernames;
+    private final Cache<String, Long> emails;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Thread listener;
+    private volatile boolean running = true;
+
+    public UserCache(UserRepo userRepo, DataSource dataSource, JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                     @Value("${user.cache.maximum-size}") long maximumSize,
+                     @Value("${user.cache.expire-after-write}") long expireAfterWrite) {
+        this.userRepo = userRepo;
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.usernames = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.emails = Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+        CaffeineCacheMetrics.monitor(meterRegistry, usernames, "userIdsByUsername");
+        CaffeineCacheMetrics.monitor(meterRegistry, emails, "userIdsByEmail");
+
+        this.listener = new Thread(this::listen, "user-cache-listener");
+        this.listener.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void init() {
+        listener.start();
+    }
+
+    /**
+     * Find user by id
+     *
+     * @param id user id
+     * @return copy of user
+     */
+    public Optional<AppUser> findById(long id) {
+        AppUser user = users.get(id, key -> userRepo.findById(key).orElse(null));
+        return Optional.ofNullable(copy(user));
+    }
+
+    /**
+     * Find user by id at least at a version, a cached copy of another version is loaded again
+     *
+     * @param id      user id
+     * @param version version just read from the database
+     * @return copy of user
+     */
+    public Optional<AppUser> findById(long id, long version) {
+        AppUser user = users.get(id, key -> userRepo.findById(key).orElse(null));
+        if (user != null && (user.getVersion() == null || user.getVersion() != version)) {
+            evict(id);
+            long before = invalidations.get();
+            user = userRepo.findById(id).orElse(null);
+            put(user, before);
+        }
+        return Optional.ofNullable(copy(user));
+    }
+
+    /**
+     * Find user by username
+     *
+     * @param username username
+     * @return copy of user or null
+     */
+    public AppUser findByUsername(String username) {
+        Long id = usernames.getIfPresent(username);
+        AppUser user = id == null ? null : users.getIfPresent(id);
+        // a mapping left behind by a rename no longer matches its user
+        if (user == null || !username.equals(user.getUsername())) {
+            long before = invalidations.get();
+            user = userRepo.findByUsername(username);
+            put(user, before);
+        }
+        return copy(user);
+    }
+
+    /**
+     * Find user by email
+     *
+     * @param email email
+     * @return copy of user or null
+     */
+    public AppUser findByEmail(String email) {
+        Long id = emails.getIfPresent(email);
+        AppUser user = id == null ? null : users.getIfPresent(id);
+        if (user == null || !email.equals(user.getEmail())) {
+            long before = invalidations.get();
+            user = userRepo.findByEmail(email);
+            put(user, before);
+        }
+        return copy(user);
+    }
+
+    /**
+     * Drop a user on every node, call after the change was saved
+     *
+     * @param id user id
+     */
+    public void invalidate(long id) {
+        evict(id);
+        publish(String.valueOf(id));
+    }
+
+    /**
+     * Drop some users on every node with one notification, call after the change was saved
+     *
+     * @param ids user ids
+     */
+    public void invalidate(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        ids.forEach(this::evict);
+        String payload = ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+        // notification payloads are limited to 8000 bytes
+        publish(payload.length() < MAX_PAYLOAD ? payload : ALL);
+    }
+
+    /**
+     * Drop all users on every node, e.g. after a bulk change
+     */
+    public void invalidateAll() {
+        evictAll();
+        publish(ALL);
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        listener.interrupt();
+    }
+
+    private void put(AppUser user, long before) {
+        if (user != null && invalidations.get() == before) {
+            users.put(user.getId(), user);
+            usernames.put(user.getUsername(), user.getId());
+            if (user.getEmail() != null) {
+                emails.put(user.getEmail(), user.getId());
+            }
+        }
+    }
+
+    private void evict(long id) {
+        invalidations.incrementAndGet();
+        AppUser user = users.getIfPresent(id);
+        users.invalidate(id);
+        if (user != null) {
+            usernames.invalidate(user.getUsername());
+            if (user.getEmail() != null) {
+                emails.invalidate(user.getEmail());
+            }
+        }
+    }
+
+    private void evictAll() {
+        invalidations.incrementAndGet();
+        users.invalidateAll();
+        usernames.invalidateAll();
+        emails.invalidateAll();
+    }
+
+    private static AppUser copy(AppUser user) {
+        return user == null ? null : user.toBuilder().build();
+    }
+
+    private void publish(String payload) {
+        try {
+            jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> {
+            }, CHANNEL, nodeId + ":" + payload);
+        } catch (RuntimeException e) {
+            // other nodes still converge when their entries expire
+            log.error("Can not notify other nodes of user {}: {}", payload, e.getMessage());
+        }
+    }
+
+    private void onNotification(String payload) {
+        int separator = payload.indexOf(':');
+        if (separator < 0 || payload.startsWith(nodeId + ":")) {
+            return;
+        }
+        String ids = payload.substring(separator + 1);
+        if (ALL.equals(ids)) {
+            evictAll();
+        } else {
+            for (String id : ids.split(",")) {
+                evict(Long.parseLong(id));
+            }
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + CHANNEL);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                // anything may have changed while nobody was listening
+                evictAll();
+                log.info("Listening to user changes of other nodes");
+                try {
+                    while (running) {
+                        PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT);
+                        if (notifications != null) {
+                            for (PGNotification notification : notifications) {
+                                onNotification(notification.getParameter());
+                            }
+                        }
+                    }
+                } finally {
+                    statement.execute("UNLISTEN " + CHANNEL);
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    log.error("Lost user change notifications, reconnecting: {}", e.getMessage());
+                    try {
+                        Thread.sleep(RECONNECT_DELAY);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
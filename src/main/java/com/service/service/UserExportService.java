@@ -0,0 +1,229 @@
+package com.service.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.service.config.Translator;
+import com.service.exception.ServiceUnavailableException;
+import com.service.repository.UserRepoCustom;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams users straight from a server-side cursor to the response. Postgres only keeps a cursor open when
+ * auto-commit is off, so rows are read inside a read-only transaction, {@code fetchSize} rows at a time,
+ * and each row is written out before the next one is read.
+ * <p>
+ * An export holds a connection until the client has read it all, so at most {@code user.export.max-concurrent}
+ * run at once and the next ones are refused before their response starts.
+ */
+@Service
+@Slf4j(topic = "USER-EXPORT-SERVICE")
+public class UserExportService {
+    private static final String SEARCH = " WHERE u.username ILIKE ? OR u.email ILIKE ? OR u.username % ? OR u.email % ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Counter exportedCounter;
+    private final Semaphore exports;
+    private final int fetchSize;
+
+    public UserExportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                             ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                             @Value("${user.export.fetch-size}") int fetchSize,
+                             @Value("${user.export.max-concurrent}") int maxConcurrent) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.exportedCounter = Counter.builder("user.export.exported").register(meterRegistry);
+        this.exports = new Semaphore(maxConcurrent);
+        meterRegistry.gauge("user.export.running", exports, e -> maxConcurrent - e.availablePermits());
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Export users ordered by id
+     *
+     * @param fields  requested fields
+     * @param keyword search keyword, null for all users
+     * @param pattern ILIKE pattern of keyword
+     * @param csv     CSV with a header line instead of NDJSON
+     * @param gzip    compress the body
+     * @return body written when the response is sent, holding one of the export slots until released
+     * @throws ServiceUnavailableException too many exports running
+     */
+    public Export export(Set<String> fields, String keyword, String pattern, boolean csv, boolean gzip) {
+        if (!exports.tryAcquire()) {
+            throw new ServiceUnavailableException(Translator.toLocale("user-export-busy"));
+        }
+        List<String> columns = new ArrayList<>(fields);
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i > 0 ? ", " : "").append(UserRepoCustom.FIELD_COLUMNS.get(columns.get(i)));
+        }
+        sql.append(" FROM tbl_users u").append(keyword == null ? "" : SEARCH).append(" ORDER BY u.id");
+
+        return new Export(outputStream -> {
+            OutputStream out = gzip ? new GZIPOutputStream(outputStream, 8192) : outputStream;
+            RowWriter writer = csv ? new CsvWriter(out, columns) : new NdjsonWriter(out, columns);
+            long rows = transactionTemplate.execute(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql.toString(),
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
+                if (keyword != null) {
+                    statement.setString(1, pattern);
+                    statement.setString(2, pattern);
+                    statement.setString(3, keyword);
+                    statement.setString(4, keyword);
+                }
+                return statement;
+            }, rs -> {
+                long count = 0;
+                try {
+                    while (rs.next()) {
+                        writer.write(rs);
+                        count++;
+                    }
+                } catch (IOException e) {
+                    // client went away, closing the cursor ends the transaction
+                    throw new UncheckedIOException(e);
+                }
+                return count;
+            }));
+            writer.finish();
+            if (gzip) {
+                ((GZIPOutputStream) out).finish();
+            }
+            out.flush();
+            exportedCounter.increment(rows);
+            log.info("Exported {} users", rows);
+        }, exports::release);
+    }
+
+    /**
+     * Body of an export, its slot is released once written or by {@link #release()} when it will not be
+     */
+    public static final class Export implements StreamingResponseBody {
+        private final StreamingResponseBody body;
+        private final Runnable onRelease;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public Export(StreamingResponseBody body, Runnable onRelease) {
+            this.body = body;
+            this.onRelease = onRelease;
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            try {
+                body.writeTo(outputStream);
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Release the slot, only the first call counts
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                onRelease.run();
+            }
+        }
+    }
+
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException, IOException;
+
+        void finish() throws IOException;
+    }
+
+    /**
+     * One JSON object per line, values are serialized like the rest of the API
+     */
+    private class NdjsonWriter implements RowWriter {
+        private final JsonGenerator generator;
+        private final List<String> columns;
+
+        private NdjsonWriter(OutputStream out, List<String> columns) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(out);
+            // lines are separated by the writer, the default space would start every line after the first
+            this.generator.setRootValueSeparator(null);
+            this.columns = columns;
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < columns.size(); i++) {
+                generator.writeFieldName(columns.get(i));
+                generator.writeObject(rs.getObject(i + 1));
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+        }
+    }
+
+    private static class CsvWriter implements RowWriter {
+        private final Writer writer;
+        private final int size;
+
+        private CsvWriter(OutputStream out, List<String> columns) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            this.size = columns.size();
+            writer.write(String.join(",", columns));
+            writer.write('\n');
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            for (int i = 1; i <= size; i++) {
+                if (i > 1) {
+                    writer.write(',');
+                }
+                Object value = rs.getObject(i);
+                if (value != null) {
+                    writer.write(escape(value.toString()));
+                }
+            }
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+        }
+
+        private static String escape(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.service.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.service.api.form.UserForm;
+import com.service.api.response.ImportResponse;
+import com.service.config.PooledPasswordEncoder;
+import com.service.config.Translator;
+import com.service.exception.BadRequestException;
+import com.service.model.AppUser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Imports users streamed as CSV or NDJSON in constant memory: rows are read, validated and hashed one batch at
+ * a time, and each batch goes out as a single multi-row insert. Usernames that already exist are reported
+ * as row errors, not as a failure of the whole import.
+ */
+@Service
+@Slf4j(topic = "USER-IMPORT-SERVICE")
+public class UserImportService {
+    public static final String CSV = "text/csv";
+    public static final String NDJSON = "application/x-ndjson";
+    private static final int MAX_LENGTH = 50;
+    private static final char BOM = '\uFEFF';
+
+    // one round trip per batch, RETURNING tells which rows were not skipped by the conflict
+    private static final String INSERT_SQL = "INSERT INTO tbl_users (email, username, password, created_date, updated_date) " +
+            "SELECT email, username, password, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP " +
+            "FROM unnest(?, ?, ?) AS rows (email, username, password) " +
+            "ON CONFLICT (username) DO NOTHING RETURNING id, username, email";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PooledPasswordEncoder encoder;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final RoleService roleService;
+    private final UserSuggestService userSuggestService;
+    private final Counter importedCounter;
+    private final int batchSize;
+    private final int maxErrors;
+
+    public UserImportService(JdbcTemplate jdbcTemplate, PooledPasswordEncoder encoder, Validator validator,
+                             ObjectMapper objectMapper, RoleService roleService, UserSuggestService userSuggestService,
+                             MeterRegistry meterRegistry,
+                             @Value("${user.import.batch-size}") int batchSize,
+                             @Value("${user.import.max-errors}") int maxErrors) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.encoder = encoder;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.roleService = roleService;
+        this.userSuggestService = userSuggestService;
+        this.importedCounter = Counter.builder("user.import.imported").register(meterRegistry);
+        this.batchSize = batchSize;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Import users from a stream
+     *
+     * @param input       request body
+     * @param contentType {@link #CSV} with a header line, or {@link #NDJSON}
+     * @return counts and first row errors
+     */
+    public ImportResponse importUsers(InputStream input, String contentType) throws IOException {
+        boolean csv = contentType != null && contentType.startsWith(CSV);
+        if (!csv && (contentType == null || !contentType.startsWith(NDJSON))) {
+            throw new BadRequestException(Translator.toLocale("user-import-format"));
+        }
+        log.info("Importing users from {}", contentType);
+
+        ImportResponse response = new ImportResponse();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        skipBom(reader);
+        String[] header = null;
+        if (csv) {
+            String line = reader.readLine();
+            header = line == null ? new String[0] : parseCsvLine(line).toArray(new String[0]);
+        }
+
+        List<Row> batch = new ArrayList<>(batchSize);
+        long rowNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            rowNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            response.setTotal(response.getTotal() + 1);
+            try {
+                UserForm form = csv ? fromCsv(header, line) : objectMapper.readValue(line, UserForm.class);
+                List<String> violations = validate(form);
+                if (!violations.isEmpty()) {
+                    error(response, rowNumber, violations);
+                    continue;
+                }
+                batch.add(new Row(rowNumber, form));
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                error(response, rowNumber, List.of(Translator.toLocale("user-import-malformed")));
+                continue;
+            }
+            if (batch.size() >= batchSize) {
+                insert(batch, response);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            insert(batch, response);
+        }
+
+        log.info("Imported {} of {} users", response.getImported(), response.getTotal());
+        return response;
+    }
+
+    /**
+     * Spreadsheets save CSV with a byte order mark, which would otherwise end up in the first column name
+     */
+    private static void skipBom(BufferedReader reader) throws IOException {
+        reader.mark(1);
+        if (reader.read() != BOM) {
+            reader.reset();
+        }
+    }
+
+    private List<String> validate(UserForm form) {
+        List<String> messages = validator.validate(form).stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.toList());
+        if (form.getPassword() == null || form.getPassword().isEmpty()) {
+            messages.add(Translator.toLocale("user-import-password"));
+        }
+        // one oversized value would fail the insert of its whole batch
+        if (length(form.getUsername()) > MAX_LENGTH || length(form.getEmail()) > MAX_LENGTH) {
+            messages.add(Translator.toLocale("user-import-too-long"));
+        }
+        return messages;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private void insert(List<Row> batch, ImportResponse response) {
+        List<String> hashes = encoder.encodeAll(batch.stream().map(row -> row.form.getPassword()).collect(Collectors.toList()));
+        String[] emails = batch.stream().map(row -> row.form.getEmail()).toArray(String[]::new);
+        String[] usernames = batch.stream().map(row -> row.form.getUsername()).toArray(String[]::new);
+        String[] passwords = hashes.toArray(new String[0]);
+
+        List<AppUser> inserted = jdbcTemplate.query((Connection connection) -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_SQL);
+            statement.setArray(1, textArray(connection, emails));
+            statement.setArray(2, textArray(connection, usernames));
+            statement.setArray(3, textArray(connection, passwords));
+            return statement;
+        }, (rs, rowNum) -> AppUser.builder()
+                .id(rs.getLong("id"))
+                .username(rs.getString("username"))
+                .email(rs.getString("email"))
+                .build());
+
+        Set<String> insertedUsernames = new HashSet<>();
+        for (AppUser user : inserted) {
+            insertedUsernames.add(user.getUsername());
+            // a new user must never inherit roles cached for a deleted user with the same name
+            roleService.invalidate(user.getUsername());
+            userSuggestService.put(user);
+        }
+        for (Row row : batch) {
+            // the second row of a username repeated inside the batch is skipped too
+            if (!insertedUsernames.remove(row.form.getUsername())) {
+                error(response, row.number, List.of(Translator.toLocale("user-import-duplicate")));
+            }
+        }
+        response.setImported(response.getImported() + inserted.size());
+        importedCounter.increment(inserted.size());
+    }
+
+    private void error(ImportResponse response, long rowNumber, List<String> messages) {
+        response.setFailed(response.getFailed() + 1);
+        if (response.getErrors().size() < maxErrors) {
+            response.getErrors().add(new ImportResponse.RowError(rowNumber, messages));
+        } else {
+            response.setErrorsTruncated(true);
+        }
+    }
+
+    private static Array textArray(Connection connection, String[] values) throws java.sql.SQLException {
+        return connection.createArrayOf("text", values);
+    }
+
+    private static UserForm fromCsv(String[] header, String line) {
+        List<String> values = parseCsvLine(line);
+        if (values.size() != header.length) {
+            throw new IllegalArgumentException("Expected " + header.length + " columns");
+        }
+        Map<String, String> columns = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            columns.put(header[i].trim().toLowerCase(Locale.ROOT), values.get(i));
+        }
+        return UserForm.builder()
+                .username(columns.get("username"))
+                .email(columns.get("email"))
+                .password(columns.get("password"))
+                .build();
+    }
+
+    /**
+     * One CSV record on one line, fields may be quoted and quotes doubled inside them
+     */
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static class Row {
+        private final long number;
+        private final UserForm form;
+
+        private Row(long number, UserForm form) {
+            this.number = number;
+            this.form = form;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.service.service;
+
+import com.service.config.Translator;
+import com.service.exception.ConflictException;
+import com.service.exception.ResourceNotFoundException;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes only the changed columns of a user, without reading it first. Every write moves the version,
+ * a write against a version that is no longer current changes nothing and is reported as a conflict.
+ */
+@Service
+@Slf4j(topic = "USER-PATCH-SERVICE")
+public class UserPatchService {
+    /**
+     * Fields that can be patched, with their column
+     */
+    public static final Map<String, String> FIELD_COLUMNS = Map.of(
+            "email", "email",
+            "username", "username",
+            "password", "password");
+
+    private static final String VERSION_SQL = "SELECT version FROM tbl_users WHERE id = ?";
+    private static final String PASSWORD_SQL = "UPDATE tbl_users SET password = ?, version = version + 1, " +
+            "updated_date = CURRENT_TIMESTAMP WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserPatchService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Update some columns of user if it is still at the expected version
+     *
+     * @param id      user id
+     * @param version expected version
+     * @param changes new values by field of {@link #FIELD_COLUMNS}, values already validated and encoded
+     * @return user after the update
+     * @throws ResourceNotFoundException user not found
+     */
+    public Result update(long id, long version, Map<String, String> changes) throws ResourceNotFoundException {
+        log.info("Patching user {} at version {}", id, version);
+
+        // the joined row is read before the update, so the old username can still be returned
+        StringBuilder sql = new StringBuilder("UPDATE tbl_users u SET ");
+        List<Object> args = new ArrayList<>();
+        changes.forEach((field, value) -> {
+            sql.append(FIELD_COLUMNS.get(field)).append(" = ?, ");
+            args.add(value);
+        });
+        sql.append("version = u.version + 1, updated_date = CURRENT_TIMESTAMP FROM tbl_users o " +
+                "WHERE o.id = u.id AND u.id = ? AND u.version = ? " +
+                "RETURNING u.version, u.username, u.email, o.username AS old_username");
+        args.add(id);
+        args.add(version);
+
+        List<Result> results;
+        try {
+            results = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new Result(
+                    rs.getLong("version"),
+                    rs.getString("username"),
+                    rs.getString("email"),
+                    rs.getString("old_username")), args.toArray());
+        } catch (DuplicateKeyException e) {
+            throw new ConflictException(Translator.toLocale("user-username-taken"));
+        }
+        if (results.isEmpty()) {
+            // only a failed write pays for telling a missing user from a stale version
+            if (jdbcTemplate.queryForList(VERSION_SQL, Long.class, id).isEmpty()) {
+                throw new ResourceNotFoundException(Translator.toLocale("user-id-not-found"));
+            }
+            throw new ConflictException(Translator.toLocale("user-version-conflict"));
+        }
+        return results.get(0);
+    }
+
+    /**
+     * Current version of user
+     *
+     * @param id user id
+     * @return version
+     * @throws ResourceNotFoundException user not found
+     */
+    public long version(long id) throws ResourceNotFoundException {
+        List<Long> versions = jdbcTemplate.queryForList(VERSION_SQL, Long.class, id);
+        if (versions.isEmpty()) {
+            throw new ResourceNotFoundException(Translator.toLocale("user-id-not-found"));
+        }
+        return versions.get(0);
+    }
+
+    /**
+     * Replace password of user whatever its version
+     *
+     * @param id              user id
+     * @param encodedPassword encoded password
+     * @throws ResourceNotFoundException user not found
+     */
+    public void updatePassword(long id, String encodedPassword) throws ResourceNotFoundException {
+        if (jdbcTemplate.update(PASSWORD_SQL, encodedPassword, id) == 0) {
+            throw new ResourceNotFoundException(Translator.toLocale("user-id-not-found"));
+        }
+    }
+
+    @Value
+    public static class Result {
+        long version;
+        String username;
+        String email;
+        String oldUsername;
+    }
+}
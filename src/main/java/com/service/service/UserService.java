@@ -1,57 +1,125 @@
 package com.service.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.service.api.form.UserForm;
+import com.service.api.form.UserPatchForm;
+import com.service.api.response.BulkResponse;
+import com.service.api.response.ImportResponse;
 import com.service.api.response.PageResponse;
 import com.service.config.Translator;
 import com.service.dto.UserDTO;
+import com.service.dto.UserVersionDTO;
+import com.service.exception.BadRequestException;
+import com.service.exception.ConflictException;
 import com.service.exception.ResourceNotFoundException;
+import com.service.exception.ServiceUnavailableException;
 import com.service.model.AppUser;
+import com.service.model.AppUserDetails;
 import com.service.model.Token;
 import com.service.repository.UserRepo;
+import com.service.repository.UserRepoCustom;
+import com.service.util.CursorUtil;
+import com.service.util.ETagUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
 import javax.mail.MessagingException;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j(topic = "USER-SERVICE")
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
+    private static final Set<String> DEFAULT_FIELDS = Set.of("id", "username", "email");
+
     @Autowired
     private UserRepo userRepo;
     @Autowired
     private TokenService tokenService;
     @Autowired
-    private MailService mailService;
+    private MailOutboxService mailOutboxService;
+    @Autowired
+    private MailTemplateService mailTemplateService;
     @Autowired
     private PasswordEncoder encoder;
+    @Autowired
+    private RoleService roleService;
+    @Autowired
+    private RevocationService revocationService;
+    @Autowired
+    private UserSuggestService userSuggestService;
+    @Autowired
+    private UserCache userCache;
+    @Autowired
+    private UserImportService userImportService;
+    @Autowired
+    private UserExportService userExportService;
+    @Autowired
+    private UserBulkService userBulkService;
+    @Autowired
+    private UserPatchService userPatchService;
+    @Autowired
+    private Validator validator;
+
+    @Value("${user.bulk.max-ids}")
+    private int bulkMaxIds;
 
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        AppUser appUser = userRepo.findByUsername(username);
+        AppUser appUser = userCache.findByUsername(username);
         if (appUser == null) {
             log.info("User not found in the database");
             throw new UsernameNotFoundException(Translator.toLocale("user-name-not-found"));
         } else {
             log.info("User found in the database {}", username);
         }
-        return new org.springframework.security.core.userdetails.User(appUser.getUsername(), appUser.getPassword(), getAuthority(username));
+        return new AppUserDetails(appUser.getId(), appUser.getUsername(), appUser.getPassword(), getAuthority(username));
+    }
+
+    /**
+     * Store password hashed again with the configured encoder, called after a successful login
+     *
+     * @param user        authenticated user
+     * @param newPassword new encoded password
+     * @return user with new password
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        log.info("Upgrading password hash of user {}", user.getUsername());
+
+        AppUserDetails details = (AppUserDetails) user;
+        AppUser appUser = userCache.findById(details.getId()).orElseThrow(() -> new UsernameNotFoundException(Translator.toLocale("user-name-not-found")));
+        appUser.setPassword(newPassword);
+        userRepo.save(appUser);
+        userCache.invalidate(appUser.getId());
+        return new AppUserDetails(details.getId(), details.getUsername(), newPassword, details.getAuthorities());
     }
 
     /**
@@ -61,7 +129,7 @@ public class UserService implements UserDetailsService {
      * @return list of authorities
      */
     private List<SimpleGrantedAuthority> getAuthority(String username) {
-        List<String> roles = userRepo.findRoleByUsername(username);
+        List<String> roles = roleService.getRoles(username);
         return roles.stream().map(SimpleGrantedAuthority::new).collect(Collectors.toList());
     }
 
@@ -70,55 +138,190 @@ public class UserService implements UserDetailsService {
      *
      * @param pageNo   page number
      * @param pageSize page size
+     * @param fields   comma separated fields to return, null for the default ones
      * @return list of user
      */
-    public PageResponse findAll(int pageNo, int pageSize) {
+    @Transactional(readOnly = true)
+    public PageResponse findAll(int pageNo, int pageSize, String fields) {
         log.info("Fetching all users from the database");
 
         if (pageNo > 0) pageNo = pageNo - 1;
-        Pageable pageable = PageRequest.of(pageNo, pageSize);
+        List<UserDTO> userDTOs = userRepo.findProjected(parseFields(fields), (long) pageNo * pageSize, pageSize);
 
-        Page<AppUser> users = userRepo.findAll(pageable);
-        List<UserDTO> userDTOs = users.getContent().stream().map(x -> UserDTO.builder()
-                .username(x.getUsername())
-                .password(x.getPassword())
-                .build()).collect(Collectors.toList());
-        PageResponse response = PageResponse.builder()
+        return PageResponse.builder()
                 .pageNo(pageNo)
                 .pageSize(pageSize)
-                .total(users.getTotalElements())
+                .total(userRepo.count())
                 .items(userDTOs)
                 .build();
-
-        return response;
     }
 
     /**
      * @param keyword  key search
      * @param pageNo   page number
      * @param pageSize page size
+     * @param fields   comma separated fields to return, null for the default ones
      * @return list of user
      */
-    public PageResponse searchByName(String keyword, int pageNo, int pageSize) {
+    @Transactional(readOnly = true)
+    public PageResponse searchByName(String keyword, int pageNo, int pageSize, String fields) {
         log.info("Searching user from the database");
 
         if (pageNo > 0) pageNo = pageNo - 1;
-        Pageable pageable = PageRequest.of(pageNo, pageSize);
-
-        Page<AppUser> users = userRepo.searchByName(keyword, pageable);
-        List<UserDTO> userDTOs = users.getContent().stream().map(x -> UserDTO.builder()
-                .username(x.getUsername())
-                .password(x.getPassword())
-                .build()).collect(Collectors.toList());
+        String pattern = containsPattern(keyword);
+        List<UserDTO> userDTOs = userRepo.searchProjected(parseFields(fields), keyword, pattern, (long) pageNo * pageSize, pageSize);
 
         return PageResponse.builder()
                 .pageNo(pageNo)
                 .pageSize(pageSize)
-                .total(users.getTotalElements())
+                .total(userRepo.countSearch(keyword, pattern))
                 .items(userDTOs)
                 .build();
     }
 
+    /**
+     * Get users after a cursor, seeking by id instead of skipping rows
+     *
+     * @param keyword  key search, null for all users
+     * @param cursor   cursor of previous page, empty for the first page
+     * @param pageSize page size
+     * @param count    count all matching users too
+     * @param fields   comma separated fields to return, null for the default ones
+     * @return list of user with cursor of next page
+     */
+    @Transactional(readOnly = true)
+    public PageResponse findAfter(String keyword, String cursor, int pageSize, boolean count, String fields) {
+        log.info("Fetching users after cursor {} from the database", cursor);
+
+        long lastId;
+        try {
+            lastId = CursorUtil.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(Translator.toLocale("page-cursor-invalid"));
+        }
+
+        // one extra row tells whether a next page exists, without counting
+        if (!StringUtils.hasLength(keyword)) {
+            keyword = null;
+        }
+        String pattern = keyword != null ? containsPattern(keyword) : null;
+        List<UserDTO> userDTOs = userRepo.findProjectedAfter(parseFields(fields), keyword, pattern, lastId, pageSize + 1);
+        boolean hasNext = userDTOs.size() > pageSize;
+        if (hasNext) {
+            userDTOs = userDTOs.subList(0, pageSize);
+        }
+
+        PageResponse response = PageResponse.builder()
+                .pageSize(pageSize)
+                .items(userDTOs)
+                .nextCursor(hasNext ? CursorUtil.encode(userDTOs.get(userDTOs.size() - 1).getId()) : null)
+                .build();
+        if (count) {
+            response.setTotal(keyword != null ? userRepo.countSearch(keyword, pattern) : userRepo.count());
+        }
+        return response;
+    }
+
+    /**
+     * Get users by ids with one query
+     *
+     * @param ids    user ids
+     * @param fields comma separated fields to return, null for the default ones
+     * @return users found, in the order of ids
+     */
+    @Transactional(readOnly = true)
+    public List<UserDTO> findByIds(List<Long> ids, String fields) {
+        log.info("Fetching {} users by id from the database", ids.size());
+
+        Set<Long> distinct = bulkIds(ids);
+        Map<Long, UserDTO> users = userRepo.findProjectedByIds(parseFields(fields), distinct).stream()
+                .collect(Collectors.toMap(UserDTO::getId, Function.identity()));
+        return distinct.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * Update email and username of many users with one statement
+     *
+     * @param forms changes by user id
+     * @return status per user
+     */
+    public BulkResponse patchAll(List<UserPatchForm> forms) {
+        bulkIds(forms.stream().map(UserPatchForm::getId).collect(Collectors.toList()));
+        Set<String> usernames = new HashSet<>();
+        for (UserPatchForm form : forms) {
+            // two users renamed to the same name would fail the whole statement
+            if (form.getUsername() != null && !usernames.add(form.getUsername())) {
+                throw new BadRequestException(Translator.toLocale("user-bulk-duplicate"));
+            }
+        }
+        return userBulkService.patch(forms);
+    }
+
+    /**
+     * Delete many users with one statement
+     *
+     * @param ids user ids
+     * @return status per user
+     */
+    public BulkResponse deleteAll(List<Long> ids) {
+        return userBulkService.delete(new ArrayList<>(bulkIds(ids)));
+    }
+
+    private Set<Long> bulkIds(List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > bulkMaxIds) {
+            throw new BadRequestException(Translator.toLocale("user-bulk-size-invalid"));
+        }
+        Set<Long> distinct = new LinkedHashSet<>(ids);
+        if (distinct.size() != ids.size() || distinct.contains(null)) {
+            throw new BadRequestException(Translator.toLocale("user-bulk-duplicate"));
+        }
+        return distinct;
+    }
+
+    /**
+     * Suggest usernames while typing, answered from memory
+     *
+     * @param prefix prefix of username or email
+     * @param limit  maximum suggestions
+     * @return usernames
+     */
+    public List<String> suggest(String prefix, int limit) {
+        return userSuggestService.suggest(prefix, limit);
+    }
+
+    /**
+     * Import users streamed as CSV or NDJSON
+     *
+     * @param input       request body
+     * @param contentType content type of request body
+     * @return import result
+     * @throws IOException when request body can not be read
+     */
+    public ImportResponse importUsers(InputStream input, String contentType) throws IOException {
+        return userImportService.importUsers(input, contentType);
+    }
+
+    /**
+     * Export users matching the same filter as search, without paging
+     *
+     * @param keyword key search, null for all users
+     * @param fields  comma separated fields to return, null for the default ones
+     * @param csv     CSV instead of NDJSON
+     * @param gzip    compress the body
+     * @return body streamed from a database cursor
+     * @throws ServiceUnavailableException too many exports running
+     */
+    public UserExportService.Export exportUsers(String keyword, String fields, boolean csv, boolean gzip) {
+        log.info("Exporting users from the database");
+
+        // fields are checked before the response is committed
+        Set<String> parsed = parseFields(fields);
+        if (!StringUtils.hasLength(keyword)) {
+            return userExportService.export(parsed, null, null, csv, gzip);
+        }
+        return userExportService.export(parsed, keyword, containsPattern(keyword), csv, gzip);
+    }
+
     /**
      * Get user by id
      *
@@ -128,11 +331,38 @@ public class UserService implements UserDetailsService {
      */
     public AppUser getUserById(long id) throws ResourceNotFoundException {
         log.info("Fetching user {} from the database", id);
-        Optional<AppUser> user = Optional.ofNullable(userRepo.findById(id).orElseThrow(
+        Optional<AppUser> user = Optional.ofNullable(userCache.findById(id).orElseThrow(
                 () -> new ResourceNotFoundException(Translator.toLocale("user-id-not-found"))));
         return user.get();
     }
 
+    /**
+     * Get user by id, loaded again when the cached user is not at the version just read
+     *
+     * @param id      user id
+     * @param version version read by {@link #getVersion(long)}
+     * @return user
+     * @throws ResourceNotFoundException not found exception
+     */
+    public AppUser getUserById(long id, long version) throws ResourceNotFoundException {
+        log.info("Fetching user {} at version {} from the database", id, version);
+        return userCache.findById(id, version)
+                .orElseThrow(() -> new ResourceNotFoundException(Translator.toLocale("user-id-not-found")));
+    }
+
+    /**
+     * Get version and time of the last change of user, without loading the user
+     *
+     * @param id user id
+     * @return version
+     * @throws ResourceNotFoundException not found exception
+     */
+    @Transactional(readOnly = true)
+    public UserVersionDTO getVersion(long id) throws ResourceNotFoundException {
+        return userRepo.findVersionById(id)
+                .orElseThrow(() -> new ResourceNotFoundException(Translator.toLocale("user-id-not-found")));
+    }
+
     /**
      * Get user by email
      *
@@ -143,7 +373,7 @@ public class UserService implements UserDetailsService {
     public AppUser getByEmail(String email) throws ResourceNotFoundException {
         log.info("Fetching user {} from the database", email);
 
-        AppUser user = userRepo.findByEmail(email);
+        AppUser user = userCache.findByEmail(email);
         if (user == null) {
             throw new ResourceNotFoundException(Translator.toLocale("user-email-not-found"));
         }
@@ -161,21 +391,30 @@ public class UserService implements UserDetailsService {
         log.info("Saving user {} to the database", form.getUsername());
 
         if (Objects.isNull(form.getId())) {
-            return userRepo.save(AppUser.builder()
+            // a new user must never inherit roles cached for a deleted user with the same name
+            roleService.invalidate(form.getUsername());
+            AppUser user = userRepo.save(AppUser.builder()
                     .email(form.getEmail())
                     .username(form.getUsername())
                     .password(encoder.encode(form.getPassword()))
                     .createdDate(new Date())
-                    .build()).getId();
+                    .build());
+            userSuggestService.put(user);
+            return user.getId();
         } else {
             AppUser user = getUserById(form.getId());
             if (!Objects.isNull(form.getUsername())) {
+                roleService.invalidate(user.getUsername());
+                roleService.invalidate(form.getUsername());
                 user.setUsername(form.getUsername());
             }
             if (!Objects.isNull(form.getPassword())) {
                 user.setPassword(encoder.encode(form.getPassword()));
             }
-            return userRepo.save(user).getId();
+            user = userRepo.save(user);
+            userCache.invalidate(user.getId());
+            userSuggestService.put(user);
+            return user.getId();
         }
     }
 
@@ -189,11 +428,82 @@ public class UserService implements UserDetailsService {
     public long changePassword(Long id, String password) throws ResourceNotFoundException {
         log.info("Changing password for user {} to the database", id);
 
-        AppUser user = getUserById(id);
         if (!Objects.isNull(password)) {
-            user.setPassword(encoder.encode(password));
+            userPatchService.updatePassword(id, encoder.encode(password));
+            userCache.invalidate(id);
+        } else {
+            userPatchService.version(id);
         }
-        return userRepo.save(user).getId();
+        return id;
+    }
+
+    /**
+     * Apply a JSON merge patch to user with one targeted update
+     *
+     * @param id      user id
+     * @param ifMatch entity tag of the version the patch was made against
+     * @param patch   merge patch of email, username or password
+     * @return new version
+     * @throws ResourceNotFoundException not found exception
+     */
+    public long mergePatch(long id, String ifMatch, JsonNode patch) throws ResourceNotFoundException {
+        log.info("Patching user {} in the database", id);
+
+        Long version = ETagUtil.version(ifMatch, id);
+        if (version == null) {
+            throw new BadRequestException(Translator.toLocale("user-version-required"));
+        }
+        Map<String, String> changes = parsePatch(id, patch);
+        if (changes.isEmpty()) {
+            if (userPatchService.version(id) != version) {
+                throw new ConflictException(Translator.toLocale("user-version-conflict"));
+            }
+            return version;
+        }
+
+        UserPatchService.Result result = userPatchService.update(id, version, changes);
+        userCache.invalidate(id);
+        if (!result.getUsername().equals(result.getOldUsername())) {
+            roleService.invalidate(result.getOldUsername());
+            roleService.invalidate(result.getUsername());
+        }
+        userSuggestService.put(AppUser.builder().id(id).username(result.getUsername()).email(result.getEmail()).build());
+        return result.getVersion();
+    }
+
+    /**
+     * Members of a merge patch become column values, null would remove a required value and is rejected
+     */
+    private Map<String, String> parsePatch(long id, JsonNode patch) {
+        if (patch == null || !patch.isObject()) {
+            throw new BadRequestException(Translator.toLocale("user-patch-invalid"));
+        }
+        Map<String, String> changes = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!UserPatchService.FIELD_COLUMNS.containsKey(field.getKey()) || !field.getValue().isTextual()) {
+                throw new BadRequestException(Translator.toLocale("user-patch-invalid"));
+            }
+            changes.put(field.getKey(), field.getValue().asText());
+        }
+
+        UserPatchForm form = UserPatchForm.builder()
+                .id(id)
+                .email(changes.get("email"))
+                .username(changes.get("username"))
+                .build();
+        Set<ConstraintViolation<UserPatchForm>> violations = validator.validate(form);
+        if (!violations.isEmpty()) {
+            throw new BadRequestException(violations.iterator().next().getMessage());
+        }
+        if (changes.containsKey("password")) {
+            if (changes.get("password").isEmpty()) {
+                throw new BadRequestException(Translator.toLocale("user-patch-password"));
+            }
+            changes.put("password", encoder.encode(changes.get("password")));
+        }
+        return changes;
     }
 
     /**
@@ -207,12 +517,49 @@ public class UserService implements UserDetailsService {
 
         if (Objects.nonNull(id)) {
             userRepo.deleteById(id);
+            userCache.invalidate(id);
+            userSuggestService.remove(id);
             return true;
         }
 
         return false;
     }
 
+    /**
+     * Fields requested by client, checked against the projectable columns
+     */
+    private static Set<String> parseFields(String fields) {
+        if (!StringUtils.hasText(fields)) {
+            return DEFAULT_FIELDS;
+        }
+        Set<String> parsed = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!UserRepoCustom.FIELD_COLUMNS.containsKey(name)) {
+                throw new BadRequestException(Translator.toLocale("user-fields-invalid"));
+            }
+            parsed.add(name);
+        }
+        return parsed;
+    }
+
+    /**
+     * LIKE pattern matching keyword anywhere, wildcards typed by the user are matched literally
+     */
+    private static String containsPattern(String keyword) {
+        return "%" + keyword.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * Revoke every access and refresh token of user
+     *
+     * @param id user id
+     * @throws ResourceNotFoundException user not found
+     */
+    public void revokeSessions(long id) throws ResourceNotFoundException {
+        AppUser user = getUserById(id);
+        revocationService.revokeUser(user.getId(), user.getUsername());
+    }
 
     /**
      * Send link confirm in order to reset password token to email
@@ -220,6 +567,7 @@ public class UserService implements UserDetailsService {
      * @param email user's email
      * @throws ResourceNotFoundException
      */
+    @Transactional
     public void sendResetTokenToEmail(String email) throws ResourceNotFoundException {
         // get user by email
         AppUser appUser = getByEmail(email);
@@ -230,20 +578,14 @@ public class UserService implements UserDetailsService {
         // Todo: replace domain name in order to navigate to change password page
         String resetLink = "http://domain.name/reset-password?token=" + resetToken;
 
-        // send new password to email
-        // Todo: Need to replace email content
+        // send new password to email, in the language of the request
         String from = "no-reply@service.api";
-        String subject = "[API-Service] Reset password request";
-        String body = String.format("Dear %s,\n\n" +
-                "If your forgot password\n" +
-                "Click link to reset password: %s\n\n" +
-                "- BackEnd Team", appUser.getUsername(), resetLink);
-
-        // send mail to user
-        mailService.sendEmail(from, email, subject, body);
+        MailTemplateService.Rendered mail = mailTemplateService.render("reset-password",
+                Map.of("username", appUser.getUsername(), "resetLink", resetLink));
 
-        // save reset password token into the database
+        // save reset password token and queue mail in one transaction, mail is sent after commit
         tokenService.saveResetToken(appUser, resetToken);
+        mailOutboxService.enqueue(from, email, mail.getSubject(), mail.getText(), mail.getHtml());
     }
 
     /**
@@ -263,9 +605,9 @@ public class UserService implements UserDetailsService {
 
         // Update new password
         AppUser appUser = token.getUser();
-        PasswordEncoder encoder = new BCryptPasswordEncoder();
         appUser.setPassword(encoder.encode(newPassword));
         userRepo.save(appUser);
+        userCache.invalidate(appUser.getId());
     }
 
 }
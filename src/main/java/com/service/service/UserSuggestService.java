@@ -0,0 +1,122 @@
+package com.service.service;
+
+import com.service.model.AppUser;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sorted in-memory index of usernames and emails answering prefix autocomplete without a query.
+ * <p>
+ * Writes of this node update the index at once, a periodic rebuild picks up writes of other nodes.
+ */
+@Service
+@Slf4j(topic = "USER-SUGGEST-SERVICE")
+public class UserSuggestService {
+    private static final String USERS_SQL = "SELECT id, username, email FROM tbl_users";
+    // keys are "<lower case term>\0<user id>" so that users sharing a term do not overwrite each other
+    private static final char SEPARATOR = '\0';
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AtomicReference<PrefixIndex> index = new AtomicReference<>(new PrefixIndex());
+
+    public UserSuggestService(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        Gauge.builder("user.suggest.size", index, i -> i.get().terms.size()).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        rebuild();
+    }
+
+    /**
+     * Usernames of users whose username or email starts with prefix
+     *
+     * @param prefix typed prefix, case insensitive
+     * @param limit  maximum usernames
+     * @return usernames in alphabetical order of the matched term
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        ConcurrentNavigableMap<String, String> matches = index.get().entries.subMap(from, true, from + Character.MAX_VALUE, false);
+        Set<String> usernames = new LinkedHashSet<>();
+        for (String username : matches.values()) {
+            if (usernames.size() >= limit) {
+                break;
+            }
+            usernames.add(username);
+        }
+        return new ArrayList<>(usernames);
+    }
+
+    /**
+     * Index a created or updated user, replacing its previous terms
+     *
+     * @param user saved user
+     */
+    public void put(AppUser user) {
+        index.get().put(user.getId(), user.getUsername(), user.getEmail());
+    }
+
+    /**
+     * Remove a deleted user
+     *
+     * @param id user id
+     */
+    public void remove(long id) {
+        index.get().remove(id);
+    }
+
+    /**
+     * Load all users into a new index and swap it
+     */
+    @Scheduled(fixedDelayString = "${user.suggest.rebuild-interval}", initialDelayString = "${user.suggest.rebuild-interval}")
+    public void rebuild() {
+        PrefixIndex fresh = new PrefixIndex();
+        jdbcTemplate.query(USERS_SQL, rs -> {
+            fresh.put(rs.getLong("id"), rs.getString("username"), rs.getString("email"));
+        });
+        index.set(fresh);
+        log.info("Indexed {} users for suggestions", fresh.terms.size());
+    }
+
+    private static class PrefixIndex {
+        private final ConcurrentSkipListMap<String, String> entries = new ConcurrentSkipListMap<>();
+        private final Map<Long, List<String>> terms = new ConcurrentHashMap<>();
+
+        private void put(long id, String username, String email) {
+            List<String> keys = new ArrayList<>(2);
+            for (String term : new String[]{username, email}) {
+                if (term != null) {
+                    keys.add(term.toLowerCase(Locale.ROOT) + SEPARATOR + id);
+                }
+            }
+            // compute serializes writers of the same user
+            terms.compute(id, (key, previous) -> {
+                if (previous != null) {
+                    previous.forEach(entries::remove);
+                }
+                keys.forEach(entry -> entries.put(entry, username));
+                return keys;
+            });
+        }
+
+        private void remove(long id) {
+            terms.computeIfPresent(id, (key, previous) -> {
+                previous.forEach(entries::remove);
+                return null;
+            });
+        }
+    }
+}
@@ -3,5 +3,6 @@ package com.service.util;
 public final class ApiConst {
     public static final String API_VERSION_1 = "Api-Version=1.0";
     public static final String USER_ROLE = "roles";
+    public static final String USER_ID = "uid";
 
 }
@@ -0,0 +1,38 @@
+package com.service.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursors of keyset pagination, clients must not build or parse them
+ */
+public final class CursorUtil {
+    private static final String PREFIX = "id:";
+
+    private CursorUtil() {
+    }
+
+    /**
+     * @param lastId id of the last item of a page
+     * @return cursor of the next page
+     */
+    public static String encode(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor cursor from a previous page, empty for the first page
+     * @return id to seek after
+     * @throws IllegalArgumentException when cursor was not made by {@link #encode(long)}
+     */
+    public static long decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (!value.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Unknown cursor " + cursor);
+        }
+        return Long.parseLong(value.substring(PREFIX.length()));
+    }
+}
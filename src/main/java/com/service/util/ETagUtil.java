@@ -0,0 +1,44 @@
+package com.service.util;
+
+/**
+ * Strong entity tags of resources, derived from their version
+ */
+public final class ETagUtil {
+
+    private ETagUtil() {
+    }
+
+    /**
+     * @param id      resource id
+     * @param version version, moved by every write
+     * @return quoted entity tag
+     */
+    public static String strong(long id, long version) {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    /**
+     * @param eTag entity tag sent back by a client, e.g. in If-Match
+     * @param id   resource id
+     * @return version of the tag, null when it is not a tag of this resource
+     */
+    public static Long version(String eTag, long id) {
+        if (eTag == null) {
+            return null;
+        }
+        String value = eTag.trim();
+        if (value.startsWith("W/")) {
+            // weak tags never match for a write
+            return null;
+        }
+        String prefix = "\"" + id + "-";
+        if (!value.startsWith(prefix) || !value.endsWith("\"") || value.length() <= prefix.length() + 1) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.substring(prefix.length(), value.length() - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
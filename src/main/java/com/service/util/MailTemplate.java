@@ -0,0 +1,78 @@
+package com.service.util;
+
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Text with {@code {{name}}} placeholders, split once into literal parts and variable names so rendering
+ * only appends them into a presized buffer. Values are HTML escaped when the template is HTML.
+ */
+public final class MailTemplate {
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+    private static final int VARIABLE_SIZE_HINT = 16;
+
+    // literals[i] is followed by variables[i], the last literal has no variable after it
+    private final String[] literals;
+    private final String[] variables;
+    private final boolean html;
+    private final int sizeHint;
+
+    private MailTemplate(String[] literals, String[] variables, boolean html) {
+        this.literals = literals;
+        this.variables = variables;
+        this.html = html;
+        int size = variables.length * VARIABLE_SIZE_HINT;
+        for (String literal : literals) {
+            size += literal.length();
+        }
+        this.sizeHint = size;
+    }
+
+    /**
+     * @param source template text
+     * @param html   escape values as HTML
+     * @return compiled template
+     * @throws IllegalArgumentException placeholder not closed or without name
+     */
+    public static MailTemplate compile(String source, boolean html) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int from = 0;
+        int open;
+        while ((open = source.indexOf(OPEN, from)) >= 0) {
+            int close = source.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException("Placeholder not closed at " + open);
+            }
+            String name = source.substring(open + OPEN.length(), close).trim();
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Placeholder without name at " + open);
+            }
+            literals.add(source.substring(from, open));
+            variables.add(name);
+            from = close + CLOSE.length();
+        }
+        literals.add(source.substring(from));
+        return new MailTemplate(literals.toArray(new String[0]), variables.toArray(new String[0]), html);
+    }
+
+    /**
+     * @param model values by placeholder name, missing values render empty
+     * @return rendered text
+     */
+    public String render(Map<String, ?> model) {
+        StringBuilder out = new StringBuilder(sizeHint);
+        for (int i = 0; i < variables.length; i++) {
+            out.append(literals[i]);
+            Object value = model.get(variables[i]);
+            if (value != null) {
+                out.append(html ? HtmlUtils.htmlEscape(value.toString()) : value.toString());
+            }
+        }
+        return out.append(literals[literals.length - 1]).toString();
+    }
+}
@@ -0,0 +1,50 @@
+package com.service.util;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+public final class TokenUtil {
+
+    private TokenUtil() {
+    }
+
+    /**
+     * SHA-256 digest of a token, used as lookup key instead of the raw token
+     *
+     * @param token raw token
+     * @return base64url digest, 43 characters
+     */
+    public static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Key of a token in the revocation list
+     *
+     * @param decodedJWT decoded token
+     * @param token      raw token
+     * @return jti, or digest of token issued without jti
+     */
+    public static String revocationKey(DecodedJWT decodedJWT, String token) {
+        return decodedJWT.getId() != null ? decodedJWT.getId() : digest(token);
+    }
+
+    /**
+     * Issued at of a token
+     *
+     * @param decodedJWT decoded token
+     * @return issued at in millis, 0 when token has no iat
+     */
+    public static long issuedAt(DecodedJWT decodedJWT) {
+        return decodedJWT.getIssuedAt() == null ? 0 : decodedJWT.getIssuedAt().getTime();
+    }
+}
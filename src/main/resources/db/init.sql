@@ -1,3 +1,5 @@
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
 CREATE TYPE E_METHODS AS ENUM ('GET', 'POST', 'PUT', 'PATCH', 'DELETE');
 CREATE TABLE tbl_activities (
 	id SERIAL,
@@ -11,7 +13,23 @@ INSERT INTO tbl_activities (id, method,  url) values
 (3, 'POST', '/api/v1/users'),
 (4, 'PUT', '/api/v1/users/{id}'),
 (5, 'PATCH', '/api/v1/users/{id}'),
-(6, 'DELETE', '/api/v1/users/{id}');
+(6, 'DELETE', '/api/v1/users/{id}'),
+(7, 'POST', '/api/v1/users/{id}/revoke-sessions'),
+(8, 'POST', '/api/v1/users/import'),
+(9, 'GET', '/api/v1/users/export'),
+(10, 'PATCH', '/api/v1/users'),
+(11, 'DELETE', '/api/v1/users'),
+(12, 'POST', '/api/v1/commons/send-email/bulk'),
+(13, 'GET', '/api/v1/commons/send-email/bulk/{id}'),
+(14, 'DELETE', '/api/v1/commons/files/{id}'),
+(15, 'PUT', '/api/v1/users'),
+(16, 'PATCH', '/api/v1/users/change-password/{id}'),
+(17, 'POST', '/api/v1/commons/upload'),
+(18, 'PUT', '/api/v1/commons/upload/{name}'),
+(19, 'POST', '/api/v1/commons/files/upload-url'),
+(20, 'POST', '/api/v1/commons/files'),
+(21, 'GET', '/api/v1/commons/files/{id}/download-url'),
+(22, 'POST', '/api/v1/commons/send-email');
 
 
 CREATE TYPE E_PERMISSIONS AS ENUM ('VIEW', 'EDIT', 'DELETE', 'APPROVE');
@@ -62,7 +80,44 @@ INSERT INTO tbl_role_permission_activities (role_id, permission_id, activity_id)
 (1, 2, 4),
 (1, 2, 5),
 (1, 3, 6),
-(4, 2, 3);
+(1, 2, 7),
+(1, 2, 8),
+(1, 1, 9),
+(1, 2, 10),
+(1, 3, 11),
+(1, 2, 12),
+(1, 1, 13),
+(1, 3, 14),
+(1, 2, 15),
+(1, 2, 16),
+(1, 2, 17),
+(1, 2, 18),
+(1, 2, 19),
+(1, 2, 20),
+(1, 1, 21),
+(1, 2, 22),
+(2, 3, 14),
+(2, 2, 17),
+(2, 2, 18),
+(2, 2, 19),
+(2, 2, 20),
+(2, 1, 21),
+(2, 2, 22),
+(3, 3, 14),
+(3, 2, 17),
+(3, 2, 18),
+(3, 2, 19),
+(3, 2, 20),
+(3, 1, 21),
+(3, 2, 22),
+(4, 2, 3),
+(4, 3, 14),
+(4, 2, 17),
+(4, 2, 18),
+(4, 2, 19),
+(4, 2, 20),
+(4, 1, 21),
+(4, 2, 22);
 
 
 CREATE TABLE tbl_users (
@@ -72,9 +127,12 @@ CREATE TABLE tbl_users (
 	password VARCHAR(255) NOT NULL,
 	created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	updated_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+	version BIGINT NOT NULL DEFAULT 0,
 	UNIQUE(username),
 	PRIMARY KEY(id)
 );
+CREATE INDEX tbl_users_username_trgm_idx ON tbl_users USING GIN (username gin_trgm_ops);
+CREATE INDEX tbl_users_email_trgm_idx ON tbl_users USING GIN (email gin_trgm_ops);
 INSERT INTO tbl_users (email, username, password) VALUES
 ('sysadmin@email.com', 'sysadmin', '$2a$10$slYQmyNdGzTn7ZLBXBChFOC9f6kFjAqPhccnP6DxlWXx2lPk1C3G6'),
 ('admin@email.com', 'admin', '$2a$10$slYQmyNdGzTn7ZLBXBChFOC9f6kFjAqPhccnP6DxlWXx2lPk1C3G6'),
@@ -94,8 +152,71 @@ INSERT INTO tbl_user_roles (user_id, role_id) VALUES (1, 1),(4, 4);
 CREATE TABLE tbl_token (
 	id SERIAL,
 	user_id INT,
-	token VARCHAR(255) NOT NULL,
+	session_id VARCHAR(64),
+	token_digest VARCHAR(64) NOT NULL,
+	revocation_key VARCHAR(64),
 	expiry_date TIMESTAMP,
 	PRIMARY KEY (id),
 	CONSTRAINT tbl_refresh_token FOREIGN KEY (user_id) REFERENCES tbl_users(id)
 );
+CREATE UNIQUE INDEX tbl_token_digest_idx ON tbl_token (token_digest);
+CREATE UNIQUE INDEX tbl_token_session_idx ON tbl_token (session_id);
+CREATE INDEX tbl_token_user_idx ON tbl_token (user_id);
+CREATE INDEX tbl_token_expiry_date_idx ON tbl_token (expiry_date);
+
+CREATE TABLE tbl_revoked_tokens (
+	jti VARCHAR(64) NOT NULL,
+	expiry_date TIMESTAMP NOT NULL,
+	revoked_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY (jti)
+);
+CREATE INDEX tbl_revoked_tokens_revoked_date_idx ON tbl_revoked_tokens (revoked_date);
+CREATE INDEX tbl_revoked_tokens_expiry_date_idx ON tbl_revoked_tokens (expiry_date);
+
+CREATE TABLE tbl_user_revocations (
+	username VARCHAR(50) NOT NULL,
+	not_before TIMESTAMP NOT NULL,
+	updated_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY (username)
+);
+
+CREATE TABLE tbl_mail_outbox (
+	id BIGSERIAL,
+	mail_from VARCHAR(255) NOT NULL,
+	mail_to VARCHAR(255) NOT NULL,
+	subject VARCHAR(255) NOT NULL,
+	body TEXT NOT NULL,
+	html_body TEXT,
+	attempts INT NOT NULL DEFAULT 0,
+	next_attempt_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	locked_until TIMESTAMP,
+	last_error VARCHAR(1000),
+	failed_date TIMESTAMP,
+	created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY (id)
+);
+CREATE INDEX tbl_mail_outbox_pending_idx ON tbl_mail_outbox (next_attempt_date) WHERE failed_date IS NULL;
+
+CREATE TABLE tbl_files (
+	id BIGSERIAL,
+	object_key VARCHAR(1024) NOT NULL,
+	content_type VARCHAR(255),
+	size BIGINT NOT NULL,
+	sha256 CHAR(64),
+	ref_count INT NOT NULL DEFAULT 1,
+	created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	UNIQUE (object_key),
+	UNIQUE (sha256),
+	PRIMARY KEY (id)
+);
+
+CREATE TABLE tbl_file_refs (
+	id BIGSERIAL,
+	file_id BIGINT NOT NULL,
+	owner VARCHAR(50) NOT NULL,
+	name VARCHAR(255) NOT NULL,
+	created_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY (id),
+	CONSTRAINT tbl_file_refs_fk1 FOREIGN KEY (file_id) REFERENCES tbl_files(id)
+);
+CREATE INDEX tbl_file_refs_file_id_idx ON tbl_file_refs (file_id);
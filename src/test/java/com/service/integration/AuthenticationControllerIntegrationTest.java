@@ -34,7 +34,7 @@ class AuthenticationControllerIntegrationTest {
         log.info("@BeforeAll: Login and save refresh token");
 
         request = new MockHttpServletRequest();
-        ResponseEntity<TokenResponse> apiResponse = controller.login(request, "sysadmin", "password");
+        ResponseEntity<TokenResponse> apiResponse = controller.login(request, "sysadmin", "password", null);
         Assertions.assertEquals(200, apiResponse.getStatusCode().value());
 
         // save refresh token
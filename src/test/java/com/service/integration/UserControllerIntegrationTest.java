@@ -3,7 +3,9 @@ package com.service.integration;
 import com.service.api.controller.AuthenticationController;
 import com.service.api.controller.UserController;
 import com.service.api.form.UserForm;
+import com.service.api.form.UserPatchForm;
 import com.service.api.response.ApiResponse;
+import com.service.api.response.BulkResponse;
 import com.service.exception.ResourceNotFoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Assertions;
@@ -13,9 +15,14 @@ import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 @ExtendWith(SpringExtension.class)
@@ -47,7 +54,7 @@ class UserControllerIntegrationTest {
     void getUserList() {
         log.info("Integrating API get user list");
 
-        ApiResponse response = userController.getUserList("someone", 1, 20);
+        ApiResponse response = userController.getUserList("someone", 1, 20, null, false, null);
         Assertions.assertEquals(200, response.getStatusCode().value());
     }
 
@@ -55,7 +62,7 @@ class UserControllerIntegrationTest {
     void getUser() throws ResourceNotFoundException {
         log.info("Integrating API get user");
 
-        ApiResponse response = userController.getUser(USER_ID);
+        ApiResponse response = userController.getUser(USER_ID, new ServletWebRequest(new MockHttpServletRequest()), new MockHttpServletResponse());
         Assertions.assertEquals(200, response.getStatusCode().value());
     }
 
@@ -82,4 +89,51 @@ class UserControllerIntegrationTest {
         ApiResponse apiResponse = userController.deleteUser(USER_ID);
         Assertions.assertEquals(205, apiResponse.getStatusCode().value());
     }
+
+    @Test
+    void patchUsers() {
+        log.info("Integrating API bulk patch users");
+
+        long first = createUser("bulk_first");
+        long second = createUser("bulk_second");
+
+        ApiResponse apiResponse = userController.patchUsers(List.of(
+                UserPatchForm.builder().id(first).username("bulk_renamed").build(),
+                UserPatchForm.builder().id(second).username("bulk_renamed_other").email("bulk_other@email.com").build(),
+                UserPatchForm.builder().id(Long.MAX_VALUE).username("bulk_missing").build()));
+        BulkResponse response = (BulkResponse) Objects.requireNonNull(apiResponse.getBody()).getData();
+        Assertions.assertEquals(List.of(BulkResponse.UPDATED, BulkResponse.UPDATED, BulkResponse.NOT_FOUND),
+                response.getItems().stream().map(BulkResponse.Item::getStatus).collect(Collectors.toList()));
+
+        // a username held by another user leaves that row alone
+        apiResponse = userController.patchUsers(List.of(UserPatchForm.builder().id(first).username("bulk_renamed_other").build()));
+        response = (BulkResponse) Objects.requireNonNull(apiResponse.getBody()).getData();
+        Assertions.assertEquals(BulkResponse.CONFLICT, response.getItems().get(0).getStatus());
+
+        userController.deleteUsers(List.of(first, second));
+    }
+
+    @Test
+    void deleteUsers() {
+        log.info("Integrating API bulk delete users");
+
+        long id = createUser("bulk_deleted");
+
+        ApiResponse apiResponse = userController.deleteUsers(List.of(id, Long.MAX_VALUE));
+        BulkResponse response = (BulkResponse) Objects.requireNonNull(apiResponse.getBody()).getData();
+        Assertions.assertEquals(1, response.getSucceeded());
+        Assertions.assertEquals(List.of(BulkResponse.DELETED, BulkResponse.NOT_FOUND),
+                response.getItems().stream().map(BulkResponse.Item::getStatus).collect(Collectors.toList()));
+        Assertions.assertThrows(ResourceNotFoundException.class,
+                () -> userController.getUser(id, new ServletWebRequest(new MockHttpServletRequest()), new MockHttpServletResponse()));
+    }
+
+    private long createUser(String username) {
+        ApiResponse response = userController.createUser(UserForm.builder()
+                .email(username + "@email.com")
+                .username(username)
+                .password("password")
+                .build());
+        return (Long) Objects.requireNonNull(response.getBody()).getData();
+    }
 }
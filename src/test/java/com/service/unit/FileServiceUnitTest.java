@@ -0,0 +1,166 @@
+package com.service.unit;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.service.api.form.FileUploadForm;
+import com.service.dto.FileDTO;
+import com.service.dto.PresignedUrlDTO;
+import com.service.exception.BadRequestException;
+import com.service.exception.ResourceNotFoundException;
+import com.service.service.FileService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.http.ContentDisposition;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@ExtendWith(TranslatorExtension.class)
+@Slf4j
+class FileServiceUnitTest {
+    private static final String BUCKET = "bucket";
+    private static final long MAX_SIZE = 1000;
+    private static final String OWNER = "admin";
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+    }
+
+    @Test
+    void signUploadWithTypeAndLength() {
+        log.info("Testing upload URL signs content type and length of the file");
+
+        // signing is local, nothing listens on the endpoint
+        AmazonS3 amazonS3 = AmazonS3ClientBuilder.standard()
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("access", "secret")))
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration("http://localhost:9000", "ap-southeast-1"))
+                .withPathStyleAccessEnabled(true)
+                .build();
+        FileUploadForm form = new FileUploadForm();
+        form.setName("my photo.png");
+        form.setContentType("image/png");
+        form.setSize(500L);
+
+        PresignedUrlDTO upload = new FileService(amazonS3, jdbcTemplate, BUCKET, 60_000, MAX_SIZE).uploadUrl(form);
+
+        Assertions.assertTrue(upload.getKey().startsWith("uploads/"));
+        Assertions.assertTrue(upload.getKey().endsWith("/my_photo.png"));
+        Assertions.assertEquals("PUT", upload.getMethod());
+        Assertions.assertTrue(upload.getUrl().contains("X-Amz-SignedHeaders=content-length%3Bcontent-type%3Bhost"), upload.getUrl());
+        Assertions.assertEquals("500", upload.getHeaders().get("Content-Length"));
+
+        form.setSize(MAX_SIZE + 1);
+        FileService fileService = new FileService(amazonS3, jdbcTemplate, BUCKET, 60_000, MAX_SIZE);
+        Assertions.assertThrows(BadRequestException.class, () -> fileService.uploadUrl(form));
+    }
+
+    @Test
+    void deleteOversizedUploadOnComplete() {
+        log.info("Testing an uploaded object over the limit is deleted instead of recorded");
+
+        AmazonS3 amazonS3 = Mockito.mock(AmazonS3.class);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(MAX_SIZE + 1);
+        String key = "uploads/1234/photo.png";
+        Mockito.when(amazonS3.getObjectMetadata(BUCKET, key)).thenReturn(metadata);
+
+        FileService fileService = new FileService(amazonS3, jdbcTemplate, BUCKET, 60_000, MAX_SIZE);
+        Assertions.assertThrows(BadRequestException.class, () -> fileService.complete(key, OWNER));
+        Assertions.assertThrows(BadRequestException.class, () -> fileService.complete("other/photo.png", OWNER));
+
+        Mockito.verify(amazonS3).deleteObject(BUCKET, key);
+        Mockito.verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void releaseOwnReferenceOnce() throws Exception {
+        log.info("Testing a reference is dropped once and only by its owner, the last one deletes the object");
+
+        AmazonS3 amazonS3 = Mockito.mock(AmazonS3.class);
+        FileService fileService = new FileService(amazonS3, jdbcTemplate, BUCKET, 60_000, MAX_SIZE);
+        Mockito.when(jdbcTemplate.query(ArgumentMatchers.contains("DELETE FROM tbl_file_refs"), ArgumentMatchers.<RowMapper<long[]>>any(),
+                ArgumentMatchers.eq(5L), ArgumentMatchers.eq(OWNER))).thenReturn(List.<long[]>of(new long[]{9L, 0L}), List.of());
+        Mockito.when(jdbcTemplate.queryForObject(ArgumentMatchers.contains("DELETE FROM tbl_files"), ArgumentMatchers.eq(String.class),
+                ArgumentMatchers.eq(9L))).thenReturn("sha256/abc");
+
+        Assertions.assertThrows(ResourceNotFoundException.class, () -> fileService.release(5L, "someone"));
+        Mockito.verifyNoInteractions(amazonS3);
+
+        fileService.release(5L, OWNER);
+        Mockito.verify(amazonS3).deleteObject(BUCKET, "sha256/abc");
+        Assertions.assertThrows(ResourceNotFoundException.class, () -> fileService.release(5L, OWNER));
+        Mockito.verify(amazonS3, Mockito.times(1)).deleteObject(ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+    }
+
+    @Test
+    void completeOwnUploadOnly() throws Exception {
+        log.info("Testing a completed upload is answered again to its owner only");
+
+        AmazonS3 amazonS3 = Mockito.mock(AmazonS3.class);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(10);
+        String key = "uploads/1234/photo.png";
+        Mockito.when(amazonS3.getObjectMetadata(BUCKET, key)).thenReturn(metadata);
+        FileDTO completed = new FileDTO();
+        completed.setId(7L);
+        Mockito.when(jdbcTemplate.query(ArgumentMatchers.contains("r.owner = ?"), ArgumentMatchers.<RowMapper<FileDTO>>any(),
+                ArgumentMatchers.eq(key), ArgumentMatchers.eq(OWNER))).thenReturn(List.of(completed));
+
+        FileService fileService = new FileService(amazonS3, jdbcTemplate, BUCKET, 60_000, MAX_SIZE);
+        Assertions.assertEquals(7L, fileService.complete(key, OWNER).getId());
+        Assertions.assertThrows(ResourceNotFoundException.class, () -> fileService.complete(key, "someone"));
+    }
+
+    @Test
+    void referenceUnderCleanName() {
+        log.info("Testing a reference keeps the last segment of the uploaded name, without control characters");
+
+        FileService fileService = new FileService(Mockito.mock(AmazonS3.class), jdbcTemplate, BUCKET, 60_000, MAX_SIZE);
+
+        fileService.reference("abc", OWNER, "C:\\photos\\\"summer\"\r\n.png");
+        fileService.reference("abc", OWNER, "../");
+
+        Mockito.verify(jdbcTemplate).query(ArgumentMatchers.anyString(), ArgumentMatchers.<RowMapper<FileDTO>>any(),
+                ArgumentMatchers.eq("abc"), ArgumentMatchers.eq(OWNER), ArgumentMatchers.eq("\"summer\".png"));
+        Mockito.verify(jdbcTemplate).query(ArgumentMatchers.anyString(), ArgumentMatchers.<RowMapper<FileDTO>>any(),
+                ArgumentMatchers.eq("abc"), ArgumentMatchers.eq(OWNER), ArgumentMatchers.eq("file"));
+    }
+
+    @Test
+    void signDownloadWithEncodedName() throws Exception {
+        log.info("Testing download URL carries the name of the reference encoded in its content disposition");
+
+        AmazonS3 amazonS3 = AmazonS3ClientBuilder.standard()
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("access", "secret")))
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration("http://localhost:9000", "ap-southeast-1"))
+                .withPathStyleAccessEnabled(true)
+                .build();
+        Mockito.when(jdbcTemplate.query(ArgumentMatchers.anyString(), ArgumentMatchers.<RowMapper<String[]>>any(),
+                ArgumentMatchers.eq(5L), ArgumentMatchers.eq(OWNER))).thenReturn(List.<String[]>of(new String[]{"sha256/abc", "\"báo cáo\".pdf"}));
+        FileService fileService = new FileService(amazonS3, jdbcTemplate, BUCKET, 60_000, MAX_SIZE);
+
+        Assertions.assertThrows(ResourceNotFoundException.class, () -> fileService.downloadUrl(5L, "someone"));
+        PresignedUrlDTO download = fileService.downloadUrl(5L, OWNER);
+
+        String disposition = URLDecoder.decode(download.getUrl().replaceAll(".*response-content-disposition=([^&]*).*", "$1"),
+                StandardCharsets.UTF_8);
+        Assertions.assertEquals(ContentDisposition.attachment().filename("\"báo cáo\".pdf", StandardCharsets.UTF_8).build().toString(),
+                disposition);
+        Assertions.assertTrue(disposition.contains("filename*=UTF-8''"), disposition);
+    }
+}
@@ -0,0 +1,44 @@
+package com.service.unit;
+
+import com.service.exception.TooManyRequestsException;
+import com.service.service.LoginAttemptService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(TranslatorExtension.class)
+@Slf4j
+class LoginAttemptServiceUnitTest {
+
+    private LoginAttemptService newService() {
+        return new LoginAttemptService(new SimpleMeterRegistry(), 3, 100, 60_000, 2, 60_000, 900_000, 1000);
+    }
+
+    @Test
+    void limitAttemptsPerUsername() {
+        log.info("Testing attempts of one username are limited by its bucket");
+
+        LoginAttemptService service = newService();
+        for (int i = 0; i < 3; i++) {
+            service.checkAllowed("sysadmin", "10.0.0.1");
+        }
+        Assertions.assertThrows(TooManyRequestsException.class, () -> service.checkAllowed("sysadmin", "10.0.0.2"));
+        service.checkAllowed("admin", "10.0.0.1");
+    }
+
+    @Test
+    void backoffAfterFailures() {
+        log.info("Testing username is blocked after consecutive failures");
+
+        LoginAttemptService service = newService();
+        service.checkAllowed("user", "10.0.0.1");
+        service.loginFailed("user", "10.0.0.1");
+        service.checkAllowed("user", "10.0.0.1");
+        service.loginFailed("user", "10.0.0.1");
+
+        TooManyRequestsException e = Assertions.assertThrows(TooManyRequestsException.class, () -> service.checkAllowed("user", "10.0.0.3"));
+        Assertions.assertTrue(e.getRetryAfterSeconds() > 0);
+    }
+}
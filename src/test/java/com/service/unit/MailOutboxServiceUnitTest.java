@@ -0,0 +1,99 @@
+package com.service.unit;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.service.service.MailOutboxService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import javax.mail.internet.MimeMessage;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+class MailOutboxServiceUnitTest {
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+    }
+
+    @Test
+    void sendBatchAndDeleteSent() throws Exception {
+        log.info("Testing claimed mails are sent over SMTP and deleted from the outbox");
+
+        claim(mail(1L, "first@email.com"), mail(2L, "second@email.com"));
+
+        Assertions.assertEquals(2, outbox(ServerSetupTest.SMTP.getPort()).drain());
+
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        Assertions.assertEquals(2, received.length);
+        Assertions.assertEquals("Reset password", received[0].getSubject());
+        Mockito.verify(jdbcTemplate).update(ArgumentMatchers.any(PreparedStatementCreator.class));
+        Mockito.verify(jdbcTemplate, Mockito.never()).update(ArgumentMatchers.contains("next_attempt_date"), ArgumentMatchers.<Object>any());
+    }
+
+    @Test
+    void retryWithBackoffWhenServerIsDown() throws Exception {
+        log.info("Testing mails are rescheduled when SMTP can not be reached");
+
+        claim(mail(1L, "first@email.com"));
+
+        // nothing listens one port below the stand-in
+        Assertions.assertEquals(1, outbox(ServerSetupTest.SMTP.getPort() - 1).drain());
+
+        Assertions.assertEquals(0, greenMail.getReceivedMessages().length);
+        Mockito.verify(jdbcTemplate).update(ArgumentMatchers.contains("next_attempt_date"),
+                ArgumentMatchers.anyString(), ArgumentMatchers.eq(5000L), ArgumentMatchers.eq(1L));
+        Mockito.verify(jdbcTemplate, Mockito.never()).update(ArgumentMatchers.any(PreparedStatementCreator.class));
+    }
+
+    private MailOutboxService outbox(int port) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(port);
+        // no workers are started, the test drains by itself
+        return new MailOutboxService(jdbcTemplate, mailSender, new SimpleMeterRegistry(), 0, 20, 1000, 60_000, 8, 5000, 3_600_000);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void claim(ResultSet... rows) throws Exception {
+        Mockito.when(jdbcTemplate.query(ArgumentMatchers.anyString(), ArgumentMatchers.any(RowMapper.class),
+                ArgumentMatchers.<Object>any(), ArgumentMatchers.<Object>any())).thenAnswer(invocation -> {
+            RowMapper<Object> mapper = invocation.getArgument(1);
+            List<Object> mails = new ArrayList<>();
+            for (int i = 0; i < rows.length; i++) {
+                mails.add(mapper.mapRow(rows[i], i));
+            }
+            return mails;
+        });
+    }
+
+    private ResultSet mail(long id, String to) throws Exception {
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(rs.getLong("id")).thenReturn(id);
+        Mockito.when(rs.getString("mail_from")).thenReturn("no-reply@service.api");
+        Mockito.when(rs.getString("mail_to")).thenReturn(to);
+        Mockito.when(rs.getString("subject")).thenReturn("Reset password");
+        Mockito.when(rs.getString("body")).thenReturn("Click link to reset password");
+        Mockito.when(rs.getInt("attempts")).thenReturn(1);
+        Mockito.when(rs.getTimestamp("created_date")).thenReturn(new Timestamp(System.currentTimeMillis()));
+        return rs;
+    }
+}
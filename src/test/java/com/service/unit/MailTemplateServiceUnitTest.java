@@ -0,0 +1,66 @@
+package com.service.unit;
+
+import com.service.service.MailTemplateService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+@Slf4j
+class MailTemplateServiceUnitTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void renderByLocale() throws IOException {
+        log.info("Testing the most specific template of the locale is rendered, HTML values escaped");
+
+        write("greeting.subject", "Hello {{name}}");
+        write("greeting.txt", "Dear {{name}}, {{missing}}bye");
+        write("greeting.html", "<p>Dear {{ name }}</p>");
+        write("greeting_vi.txt", "Xin chào {{name}}");
+        MailTemplateService service = service(60_000);
+
+        MailTemplateService.Rendered en = service.render("greeting", Locale.ENGLISH, Map.of("name", "<Tom>"));
+        Assertions.assertEquals("Hello <Tom>", en.getSubject());
+        Assertions.assertEquals("Dear <Tom>, bye", en.getText());
+        Assertions.assertEquals("<p>Dear &lt;Tom&gt;</p>", en.getHtml());
+
+        MailTemplateService.Rendered vi = service.render("greeting", new Locale("vi", "VN"), Map.of("name", "Tom"));
+        Assertions.assertEquals("Xin chào Tom", vi.getText());
+        Assertions.assertNull(vi.getHtml());
+    }
+
+    @Test
+    void reloadChangedTemplate() throws IOException {
+        log.info("Testing a changed template is compiled again");
+
+        Path text = write("greeting.txt", "Dear {{name}}");
+        MailTemplateService service = service(0);
+        Assertions.assertEquals("Dear Tom", service.render("greeting", Locale.ENGLISH, Map.of("name", "Tom")).getText());
+
+        write("greeting.txt", "Hi {{name}}");
+        text.toFile().setLastModified(text.toFile().lastModified() + 10_000);
+
+        Assertions.assertEquals("Hi Tom", service.render("greeting", Locale.ENGLISH, Map.of("name", "Tom")).getText());
+    }
+
+    private MailTemplateService service(long checkInterval) {
+        MailTemplateService service = new MailTemplateService(new DefaultResourceLoader(), dir.toUri().toString(),
+                10, checkInterval, new String[]{"greeting"});
+        service.init();
+        return service;
+    }
+
+    private Path write(String file, String content) throws IOException {
+        return Files.write(dir.resolve(file), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
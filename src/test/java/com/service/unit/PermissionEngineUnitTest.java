@@ -0,0 +1,60 @@
+package com.service.unit;
+
+import com.service.config.PermissionEngine;
+import com.service.config.PermissionSnapshot;
+import com.service.dto.ActivityPermissionDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+
+import java.util.List;
+
+@Slf4j
+class PermissionEngineUnitTest {
+    private final Authentication sysadmin = new UsernamePasswordAuthenticationToken("sysadmin", null, List.of(new SimpleGrantedAuthority("SYSTEM_ADMIN")));
+    private final Authentication user = new UsernamePasswordAuthenticationToken("user", null, List.of(new SimpleGrantedAuthority("ROLE_USER")));
+
+    private PermissionEngine permissionEngine;
+
+    @BeforeEach
+    void setUp() {
+        permissionEngine = new PermissionEngine();
+        permissionEngine.swap(PermissionSnapshot.compile(List.of(
+                new ActivityPermissionDTO("GET", "/api/v1/users/export", "SYSTEM_ADMIN"),
+                new ActivityPermissionDTO("GET", "/api/v1/users/{id}", "SYSTEM_ADMIN"))));
+    }
+
+    @Test
+    void checkDecodedPath() {
+        log.info("Testing encoded paths and path parameters are matched as they are dispatched");
+
+        Assertions.assertTrue(isGranted(sysadmin, "/api/v1/%75sers/export"));
+        Assertions.assertFalse(isGranted(user, "/api/v1/%75sers/export"));
+        Assertions.assertTrue(isGranted(sysadmin, "/api/v1/users;x=1/export"));
+        Assertions.assertFalse(isGranted(user, "/api/v1/users;x=1/export"));
+        Assertions.assertFalse(isGranted(user, "/api/v1/users//export"));
+        Assertions.assertFalse(isGranted(user, "/api/v1/users/export;jsessionid=1"));
+    }
+
+    @Test
+    void denyUndeclaredOrAnonymous() {
+        log.info("Testing undeclared activities and anonymous users are denied");
+
+        Assertions.assertFalse(isGranted(sysadmin, "/api/v1/users/export/all"));
+        Assertions.assertFalse(isGranted(new AnonymousAuthenticationToken("key", "anonymous",
+                List.of(new SimpleGrantedAuthority("SYSTEM_ADMIN"))), "/api/v1/users/export"));
+    }
+
+    private boolean isGranted(Authentication authentication, String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setContextPath("/api/v1");
+        return permissionEngine.check(() -> authentication, new RequestAuthorizationContext(request)).isGranted();
+    }
+}
@@ -0,0 +1,64 @@
+package com.service.unit;
+
+import com.service.config.PermissionSnapshot;
+import com.service.dto.ActivityPermissionDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Slf4j
+class PermissionSnapshotUnitTest {
+    private final List<GrantedAuthority> sysadmin = List.of(new SimpleGrantedAuthority("SYSTEM_ADMIN"));
+    private final List<GrantedAuthority> user = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
+    private PermissionSnapshot snapshot;
+
+    @BeforeAll
+    void setUp() {
+        // same matrix as db/init.sql
+        snapshot = PermissionSnapshot.compile(List.of(
+                new ActivityPermissionDTO("GET", "/api/v1/users", "SYSTEM_ADMIN"),
+                new ActivityPermissionDTO("GET", "/api/v1/users/{id}", "SYSTEM_ADMIN"),
+                new ActivityPermissionDTO("POST", "/api/v1/users", "SYSTEM_ADMIN"),
+                new ActivityPermissionDTO("PUT", "/api/v1/users/{id}", "SYSTEM_ADMIN"),
+                new ActivityPermissionDTO("PATCH", "/api/v1/users/{id}", "SYSTEM_ADMIN"),
+                new ActivityPermissionDTO("DELETE", "/api/v1/users/{id}", "SYSTEM_ADMIN"),
+                new ActivityPermissionDTO("POST", "/api/v1/users", "ROLE_USER")));
+    }
+
+    @Test
+    void allowGrantedRole() {
+        log.info("Testing granted roles are allowed");
+
+        Assertions.assertTrue(snapshot.isAllowed("GET", "/api/v1/users", sysadmin));
+        Assertions.assertTrue(snapshot.isAllowed("DELETE", "/api/v1/users/10", sysadmin));
+        Assertions.assertTrue(snapshot.isAllowed("HEAD", "/api/v1/users/10/", sysadmin));
+        Assertions.assertTrue(snapshot.isAllowed("POST", "/api/v1/users", user));
+    }
+
+    @Test
+    void denyMissingRole() {
+        log.info("Testing roles without permission are denied");
+
+        Assertions.assertFalse(snapshot.isAllowed("GET", "/api/v1/users", user));
+        Assertions.assertFalse(snapshot.isAllowed("DELETE", "/api/v1/users/10", user));
+        Assertions.assertFalse(snapshot.isAllowed("GET", "/api/v1/users/10", List.of()));
+    }
+
+    @Test
+    void denyUndeclaredActivity() {
+        log.info("Testing activities missing from tbl_activities are denied");
+
+        Assertions.assertFalse(snapshot.isAllowed("PUT", "/api/v1/users", sysadmin));
+        Assertions.assertFalse(snapshot.isAllowed("GET", "/api/v1/commons/files", user));
+        Assertions.assertFalse(snapshot.isAllowed("PROPFIND", "/api/v1/users", sysadmin));
+        Assertions.assertFalse(PermissionSnapshot.EMPTY.isAllowed("GET", "/api/v1/users", sysadmin));
+    }
+}
@@ -0,0 +1,75 @@
+package com.service.unit;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.service.config.PooledMailSender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.SimpleMailMessage;
+
+@Slf4j
+class PooledMailSenderUnitTest {
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private PooledMailSender mailSender;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        mailSender.destroy();
+    }
+
+    @Test
+    void reuseConnection() {
+        log.info("Testing consecutive sends share one SMTP connection");
+
+        mailSender = sender(100);
+        for (int i = 0; i < 3; i++) {
+            mailSender.send(message("user" + i + "@email.com"));
+        }
+
+        Assertions.assertEquals(3, greenMail.getReceivedMessages().length);
+        Assertions.assertEquals(1, meterRegistry.get("mail.pool.opened").gauge().value());
+        Assertions.assertEquals(1, meterRegistry.get("mail.pool.connections").tag("state", "idle").gauge().value());
+    }
+
+    @Test
+    void retireConnectionAfterMaxMessages() {
+        log.info("Testing connection is replaced after its message limit");
+
+        mailSender = sender(2);
+        mailSender.send(message("first@email.com"), message("second@email.com"));
+        mailSender.send(message("third@email.com"));
+
+        Assertions.assertEquals(3, greenMail.getReceivedMessages().length);
+        Assertions.assertEquals(2, meterRegistry.get("mail.pool.opened").gauge().value());
+    }
+
+    private PooledMailSender sender(int maxMessages) {
+        PooledMailSender sender = new PooledMailSender(2, 30_000, 1000, maxMessages);
+        sender.setHost("localhost");
+        sender.setPort(ServerSetupTest.SMTP.getPort());
+        sender.bindTo(meterRegistry);
+        return sender;
+    }
+
+    private static SimpleMailMessage message(String to) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom("no-reply@service.api");
+        message.setTo(to);
+        message.setSubject("Notification");
+        message.setText("Hello");
+        return message;
+    }
+}
@@ -0,0 +1,62 @@
+package com.service.unit;
+
+import com.service.config.PooledPasswordEncoder;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@Slf4j
+class PooledPasswordEncoderUnitTest {
+    // hash of "password" stored by db/init.sql
+    private static final String LEGACY_HASH = "$2a$10$slYQmyNdGzTn7ZLBXBChFOC9f6kFjAqPhccnP6DxlWXx2lPk1C3G6";
+
+    private PooledPasswordEncoder encoder;
+
+    @AfterEach
+    void tearDown() {
+        encoder.destroy();
+    }
+
+    @Test
+    void matchLegacyHash() {
+        log.info("Testing legacy bcrypt hash is verified and upgraded");
+
+        encoder = new PooledPasswordEncoder("bcrypt", 10, 1, 10);
+        Assertions.assertTrue(encoder.matches("password", LEGACY_HASH));
+        Assertions.assertFalse(encoder.matches("wrong", LEGACY_HASH));
+        Assertions.assertTrue(encoder.upgradeEncoding(LEGACY_HASH));
+    }
+
+    @Test
+    void encodeWithTargetEncoder() {
+        log.info("Testing new hash uses configured encoder");
+
+        encoder = new PooledPasswordEncoder("bcrypt", 10, 1, 10);
+        String hash = encoder.encode("password");
+        Assertions.assertTrue(hash.startsWith("{bcrypt}"));
+        Assertions.assertTrue(encoder.matches("password", hash));
+        Assertions.assertFalse(encoder.upgradeEncoding(hash));
+
+        PooledPasswordEncoder stronger = new PooledPasswordEncoder("bcrypt", 11, 1, 10);
+        Assertions.assertTrue(stronger.upgradeEncoding(hash));
+        stronger.destroy();
+    }
+
+    @Test
+    void encodeAllInOrder() {
+        log.info("Testing bulk hashing keeps order when the queue overflows to the caller");
+
+        encoder = new PooledPasswordEncoder("bcrypt", 4, 2, 2);
+        List<String> passwords = IntStream.range(0, 20).mapToObj(i -> "password" + i).collect(Collectors.toList());
+        List<String> hashes = encoder.encodeAll(passwords);
+        Assertions.assertEquals(passwords.size(), hashes.size());
+        for (int i = 0; i < passwords.size(); i++) {
+            Assertions.assertTrue(encoder.matches(passwords.get(i), hashes.get(i)));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.service.unit;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.service.config.TokenRevocationList;
+import com.service.repository.TokenRepo;
+import com.service.service.RefreshTokenStore;
+import com.service.util.TokenUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+@Slf4j
+class RefreshTokenStoreUnitTest {
+    private JdbcTemplate jdbcTemplate;
+    private TokenRevocationList revocationList;
+    private RefreshTokenStore store;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        revocationList = new TokenRevocationList(100);
+        store = new RefreshTokenStore(Mockito.mock(TokenRepo.class), jdbcTemplate, revocationList, new SimpleMeterRegistry(), 100);
+    }
+
+    @Test
+    void revokeReplacedToken() throws Exception {
+        log.info("Testing a token replaced by a new login is revoked for every node");
+
+        Date expiryDate = new Date(System.currentTimeMillis() + 60_000);
+        ResultSet replaced = Mockito.mock(ResultSet.class);
+        Mockito.when(replaced.getString("token_digest")).thenReturn(TokenUtil.digest(token("old-jti", expiryDate)));
+        Mockito.when(replaced.getString("revocation_key")).thenReturn("old-jti");
+        Mockito.when(replaced.getTimestamp("expiry_date")).thenReturn(new Timestamp(expiryDate.getTime()));
+        Mockito.when(jdbcTemplate.query(ArgumentMatchers.anyString(), ArgumentMatchers.<RowMapper<Object>>any(),
+                ArgumentMatchers.<Object>any())).thenAnswer(invocation -> List.of(invocation.<RowMapper<Object>>getArgument(1).mapRow(replaced, 0)));
+
+        store.save(1L, "admin", "session", token("new-jti", expiryDate), expiryDate);
+
+        Mockito.verify(jdbcTemplate).query(ArgumentMatchers.contains("INSERT INTO tbl_token"), ArgumentMatchers.<RowMapper<Object>>any(),
+                ArgumentMatchers.eq("session"), ArgumentMatchers.eq(1L), ArgumentMatchers.eq("session"),
+                ArgumentMatchers.anyString(), ArgumentMatchers.eq("new-jti"), ArgumentMatchers.any(Timestamp.class));
+        Mockito.verify(jdbcTemplate).update(ArgumentMatchers.contains("tbl_revoked_tokens"),
+                ArgumentMatchers.eq("old-jti"), ArgumentMatchers.<Object>any());
+        Assertions.assertTrue(revocationList.isRevoked("old-jti", "admin", 0));
+        Assertions.assertFalse(revocationList.isRevoked("new-jti", "admin", 0));
+    }
+
+    @Test
+    void keepFirstTokenOfSession() {
+        log.info("Testing nothing is revoked when a session gets its first token");
+
+        Date expiryDate = new Date(System.currentTimeMillis() + 60_000);
+        store.save(1L, "admin", "session", token("new-jti", expiryDate), expiryDate);
+
+        Mockito.verify(jdbcTemplate, Mockito.never()).update(ArgumentMatchers.contains("tbl_revoked_tokens"),
+                ArgumentMatchers.<Object>any());
+    }
+
+    private static String token(String jti, Date expiryDate) {
+        return JWT.create().withJWTId(jti).withSubject("admin").withExpiresAt(expiryDate).sign(Algorithm.HMAC256("secret"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.service.unit;
+
+import com.service.dto.UserRoleDTO;
+import com.service.repository.UserRepo;
+import com.service.service.RoleService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+@Slf4j
+class RoleServiceUnitTest {
+    private UserRepo userRepo;
+    private RoleService roleService;
+
+    @BeforeEach
+    void setUp() {
+        userRepo = Mockito.mock(UserRepo.class);
+        roleService = new RoleService(userRepo, new SimpleMeterRegistry(), 100, false);
+    }
+
+    @Test
+    void serveRepeatedLookupsFromMemory() {
+        log.info("Testing roles are loaded once per user");
+
+        Mockito.when(userRepo.findRoleByUsername("sysadmin")).thenReturn(List.of("SYSTEM_ADMIN"));
+
+        Assertions.assertEquals(List.of("SYSTEM_ADMIN"), roleService.getRoles("sysadmin"));
+        Assertions.assertEquals(List.of("SYSTEM_ADMIN"), roleService.getRoles("sysadmin"));
+        Mockito.verify(userRepo, Mockito.times(1)).findRoleByUsername("sysadmin");
+    }
+
+    @Test
+    void reloadAfterInvalidation() {
+        log.info("Testing changed roles are loaded again after invalidation");
+
+        Mockito.when(userRepo.findRoleByUsername("sysadmin")).thenReturn(List.of("SYSTEM_ADMIN"), List.of("ROLE_USER"));
+        Mockito.when(userRepo.findRoleByUsername("user")).thenReturn(List.of("ROLE_USER"), List.of("ROLE_ADMIN"));
+
+        roleService.getRoles("sysadmin");
+        roleService.getRoles("user");
+        roleService.invalidate("sysadmin");
+        roleService.invalidate(null);
+        Assertions.assertEquals(List.of("ROLE_USER"), roleService.getRoles("sysadmin"));
+        Assertions.assertEquals(List.of("ROLE_USER"), roleService.getRoles("user"));
+
+        roleService.invalidateAll();
+        Assertions.assertEquals(List.of("ROLE_ADMIN"), roleService.getRoles("user"));
+    }
+
+    @Test
+    void reloadCachedUsersOnly() {
+        log.info("Testing a reload refreshes cached users with one query and clears removed roles");
+
+        Mockito.when(userRepo.findRoleByUsername("sysadmin")).thenReturn(List.of("SYSTEM_ADMIN"));
+        Mockito.when(userRepo.findRoleByUsername("user")).thenReturn(List.of("ROLE_USER"));
+        List<UserRoleDTO> userRoles = List.of(
+                userRole("sysadmin", "SYSTEM_ADMIN"), userRole("sysadmin", "ROLE_USER"), userRole("admin", "ROLE_ADMIN"));
+        Mockito.when(userRepo.findAllUserRoles()).thenReturn(userRoles);
+
+        roleService.getRoles("sysadmin");
+        roleService.getRoles("user");
+        roleService.reload();
+
+        Assertions.assertEquals(List.of("SYSTEM_ADMIN", "ROLE_USER"), roleService.getRoles("sysadmin"));
+        Assertions.assertEquals(List.of(), roleService.getRoles("user"));
+        Mockito.verify(userRepo, Mockito.times(1)).findRoleByUsername("sysadmin");
+        Mockito.verify(userRepo, Mockito.times(1)).findRoleByUsername("user");
+        Mockito.verify(userRepo, Mockito.never()).findRoleByUsername("admin");
+    }
+
+    private static UserRoleDTO userRole(String username, String role) {
+        UserRoleDTO userRole = Mockito.mock(UserRoleDTO.class);
+        Mockito.when(userRole.getUsername()).thenReturn(username);
+        Mockito.when(userRole.getRole()).thenReturn(role);
+        return userRole;
+    }
+}
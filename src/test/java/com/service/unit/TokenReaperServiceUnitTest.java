@@ -0,0 +1,74 @@
+package com.service.unit;
+
+import com.service.service.TokenReaperService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+class TokenReaperServiceUnitTest {
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private TokenReaperService reaperService;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        reaperService = new TokenReaperService(jdbcTemplate, meterRegistry, 2, 7);
+    }
+
+    @Test
+    void deleteInChunksUntilShortChunk() {
+        log.info("Testing expired rows are deleted chunk by chunk until a chunk is not full");
+
+        Mockito.when(jdbcTemplate.update(ArgumentMatchers.contains("FROM tbl_token"), ArgumentMatchers.<Object>any()))
+                .thenReturn(2, 2, 1);
+        Mockito.when(jdbcTemplate.update(ArgumentMatchers.contains("FROM tbl_revoked_tokens"), ArgumentMatchers.<Object>any()))
+                .thenReturn(0);
+
+        reaperService.reap();
+
+        Mockito.verify(jdbcTemplate, Mockito.times(3)).update(ArgumentMatchers.contains("FROM tbl_token"), ArgumentMatchers.eq(2));
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).update(ArgumentMatchers.contains("FROM tbl_revoked_tokens"), ArgumentMatchers.eq(2));
+        Assertions.assertEquals(5, meterRegistry.get("token.reaper.deleted").tag("table", "tbl_token").counter().count());
+        Assertions.assertEquals(0, meterRegistry.get("token.reaper.deleted").tag("table", "tbl_revoked_tokens").counter().count());
+    }
+
+    @Test
+    void deleteChunksByCtidWithoutWaiting() {
+        log.info("Testing chunks are selected by ctid and rows locked by another node are skipped");
+
+        reaperService.reap();
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(jdbcTemplate, Mockito.times(2)).update(sql.capture(), ArgumentMatchers.eq(2));
+        for (String statement : sql.getAllValues()) {
+            Assertions.assertTrue(statement.contains("WHERE ctid IN (SELECT ctid"));
+            Assertions.assertTrue(statement.contains("LIMIT ? FOR UPDATE SKIP LOCKED"));
+        }
+    }
+
+    @Test
+    void keepUserRevocationsOfLiveTokens() {
+        log.info("Testing user revocations are kept while a token issued before them can still be alive");
+
+        long before = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7);
+        reaperService.reap();
+        long after = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7);
+
+        ArgumentCaptor<Timestamp> notBefore = ArgumentCaptor.forClass(Timestamp.class);
+        Mockito.verify(jdbcTemplate).update(ArgumentMatchers.contains("FROM tbl_user_revocations WHERE not_before < ?"),
+                notBefore.capture(), ArgumentMatchers.eq(2));
+        Assertions.assertTrue(notBefore.getValue().getTime() >= before && notBefore.getValue().getTime() <= after);
+    }
+}
@@ -0,0 +1,73 @@
+package com.service.unit;
+
+import com.service.config.TokenRevocationList;
+import com.service.util.BloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.UUID;
+
+@Slf4j
+class TokenRevocationListUnitTest {
+    private final long now = System.currentTimeMillis();
+
+    @Test
+    void revokeToken() {
+        log.info("Testing revoked token is rejected and others pass");
+
+        TokenRevocationList revocationList = new TokenRevocationList(100);
+        revocationList.revoke("jti-1", now + 60_000);
+
+        Assertions.assertTrue(revocationList.isRevoked("jti-1", "sysadmin", now));
+        Assertions.assertFalse(revocationList.isRevoked("jti-2", "sysadmin", now));
+        Assertions.assertFalse(revocationList.isRevoked(null, "sysadmin", now));
+    }
+
+    @Test
+    void revokeUser() {
+        log.info("Testing tokens issued before user revocation are rejected");
+
+        TokenRevocationList revocationList = new TokenRevocationList(100);
+        revocationList.revokeUser("sysadmin", now);
+
+        Assertions.assertTrue(revocationList.isRevoked("jti-1", "sysadmin", now - 1000));
+        Assertions.assertTrue(revocationList.isRevoked("jti-1", "sysadmin", 0));
+        Assertions.assertFalse(revocationList.isRevoked("jti-2", "sysadmin", now + 1000));
+        Assertions.assertFalse(revocationList.isRevoked("jti-1", "admin", now - 1000));
+    }
+
+    @Test
+    void replaceRevocations() {
+        log.info("Testing full reload drops revocations missing from it");
+
+        TokenRevocationList revocationList = new TokenRevocationList(100);
+        revocationList.revoke("jti-1", now + 60_000);
+        revocationList.revokeUser("admin", now);
+        revocationList.replace(Map.of("jti-2", now + 60_000), Map.of());
+
+        Assertions.assertFalse(revocationList.isRevoked("jti-1", "admin", now - 1000));
+        Assertions.assertTrue(revocationList.isRevoked("jti-2", "admin", now));
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegative() {
+        log.info("Testing Bloom filter keeps every value and few false positives");
+
+        BloomFilter filter = new BloomFilter(10_000, 0.001);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("revoked-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(filter.mightContain("revoked-" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+        Assertions.assertTrue(falsePositives < 100, "false positives " + falsePositives);
+    }
+}
@@ -0,0 +1,19 @@
+package com.service.unit;
+
+import com.service.config.Translator;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Gives {@link Translator} the messages of the application, for tests running without an application context
+ */
+public class TranslatorExtension implements BeforeAllCallback {
+    @Override
+    public void beforeAll(ExtensionContext context) {
+        ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        ReflectionTestUtils.setField(Translator.class, "messageSource", messageSource);
+    }
+}
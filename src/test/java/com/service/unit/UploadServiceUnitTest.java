@@ -0,0 +1,196 @@
+package com.service.unit;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CannedAccessControlList;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.service.dto.FileDTO;
+import com.service.exception.BadRequestException;
+import com.service.service.FileService;
+import com.service.service.UploadService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@ExtendWith(TranslatorExtension.class)
+@Slf4j
+class UploadServiceUnitTest {
+    private static final String BUCKET = "bucket";
+    private static final String OWNER = "admin";
+
+    // SHA-256 of "abc"
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    private AmazonS3 amazonS3;
+    private FileService fileService;
+    private SimpleMeterRegistry meterRegistry;
+    private UploadService uploadService;
+    private final Map<Integer, String> uploadedParts = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        amazonS3 = Mockito.mock(AmazonS3.class);
+        Mockito.when(amazonS3.getUrl(ArgumentMatchers.eq(BUCKET), ArgumentMatchers.anyString()))
+                .thenReturn(new URL("http://localhost:9000/bucket/file"));
+        Mockito.when(amazonS3.initiateMultipartUpload(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> {
+                    InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+                    result.setUploadId("upload-1");
+                    return result;
+                });
+        Mockito.when(amazonS3.uploadPart(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            String content = new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (content.contains("!")) {
+                throw new AmazonClientException("Part rejected");
+            }
+            uploadedParts.put(request.getPartNumber(), content);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        });
+
+        fileService = Mockito.mock(FileService.class);
+        Mockito.when(fileService.record(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyLong(),
+                ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyString()))
+                .thenAnswer(invocation -> file(1L, invocation.getArgument(5)));
+
+        meterRegistry = new SimpleMeterRegistry();
+        // parts of 4 bytes, 2 threads, 3 buffers, files up to 12 bytes
+        uploadService = new UploadService(amazonS3, fileService, meterRegistry, BUCKET, 4, 2, 3, 1000, 12);
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadService.destroy();
+    }
+
+    @Test
+    void uploadSmallFileUnderItsHash() {
+        log.info("Testing a file is staged in one request, then copied under its hash and recorded");
+
+        FileDTO file = uploadService.uploadFile("a b.txt", "text/plain", null, -1, OWNER, stream("abc"));
+
+        Assertions.assertEquals("a b.txt", file.getName());
+        ArgumentCaptor<PutObjectRequest> put = ArgumentCaptor.forClass(PutObjectRequest.class);
+        Mockito.verify(amazonS3).putObject(put.capture());
+        Assertions.assertTrue(put.getValue().getKey().startsWith("staging/"));
+        Assertions.assertEquals(3, put.getValue().getMetadata().getContentLength());
+        Mockito.verify(amazonS3, Mockito.never()).initiateMultipartUpload(ArgumentMatchers.any());
+
+        ArgumentCaptor<CopyObjectRequest> copy = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        Mockito.verify(amazonS3).copyObject(copy.capture());
+        Assertions.assertEquals("sha256/" + ABC_SHA256, copy.getValue().getDestinationKey());
+        Assertions.assertEquals(CannedAccessControlList.PublicRead, copy.getValue().getCannedAccessControlList());
+        Mockito.verify(amazonS3).deleteObject(BUCKET, put.getValue().getKey());
+        Mockito.verify(fileService).record("sha256/" + ABC_SHA256, "text/plain", 3, ABC_SHA256, OWNER, "a b.txt");
+    }
+
+    @Test
+    void skipTransferOfStoredContent() {
+        log.info("Testing content already stored is referenced without reading or sending it");
+
+        Mockito.when(fileService.reference(ABC_SHA256, OWNER, "copy.txt")).thenReturn(file(7L, "copy.txt"));
+        ByteArrayInputStream in = stream("abc");
+
+        FileDTO file = uploadService.uploadFile("copy.txt", "text/plain", ABC_SHA256, 3, OWNER, in);
+
+        Assertions.assertEquals(7L, file.getId());
+        Assertions.assertEquals("copy.txt", file.getName());
+        Assertions.assertEquals(3, in.available());
+        Mockito.verifyNoInteractions(amazonS3);
+        Assertions.assertEquals(1, meterRegistry.get("s3.upload.deduplicated").counter().count());
+    }
+
+    @Test
+    void uploadLargeFileInParts() {
+        log.info("Testing a file larger than a part is uploaded in parts and completed in order");
+
+        uploadService.uploadFile("large.txt", "text/plain", null, -1, OWNER, stream("aaaabbbbcc"));
+
+        ArgumentCaptor<InitiateMultipartUploadRequest> initiate = ArgumentCaptor.forClass(InitiateMultipartUploadRequest.class);
+        Mockito.verify(amazonS3).initiateMultipartUpload(initiate.capture());
+        Assertions.assertTrue(initiate.getValue().getKey().startsWith("staging/"));
+        Assertions.assertEquals(Map.of(1, "aaaa", 2, "bbbb", 3, "cc"), uploadedParts);
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        Mockito.verify(amazonS3).completeMultipartUpload(complete.capture());
+        Assertions.assertEquals(List.of(1, 2, 3), complete.getValue().getPartETags().stream()
+                .map(PartETag::getPartNumber).collect(Collectors.toList()));
+        Mockito.verify(amazonS3).copyObject(ArgumentMatchers.any(CopyObjectRequest.class));
+        Assertions.assertEquals(3, meterRegistry.get("s3.upload.buffers").gauge().value());
+    }
+
+    @Test
+    void abortWhenPartFails() {
+        log.info("Testing a failed part aborts the upload and gives its buffers back");
+
+        Assertions.assertThrows(ResponseStatusException.class,
+                () -> uploadService.uploadFile("large.txt", "text/plain", null, -1, OWNER, stream("aaaa!bbbcc")));
+
+        Mockito.verify(amazonS3).abortMultipartUpload(ArgumentMatchers.any(AbortMultipartUploadRequest.class));
+        Mockito.verify(amazonS3, Mockito.never()).completeMultipartUpload(ArgumentMatchers.any());
+        Mockito.verifyNoInteractions(fileService);
+        Assertions.assertEquals(3, meterRegistry.get("s3.upload.buffers").gauge().value());
+    }
+
+    @Test
+    void refuseDeclaredLengthOverLimit() {
+        log.info("Testing a body declaring more than the limit is refused before it is read");
+
+        ByteArrayInputStream in = stream("aaaabbbbccccd");
+
+        Assertions.assertThrows(BadRequestException.class, () -> uploadService.uploadFile("huge.txt", "text/plain", null, 13, OWNER, in));
+        Assertions.assertEquals(13, in.available());
+        Mockito.verifyNoInteractions(amazonS3);
+    }
+
+    @Test
+    void abortStreamOverLimit() {
+        log.info("Testing a body going past the limit aborts its upload");
+
+        Assertions.assertThrows(BadRequestException.class,
+                () -> uploadService.uploadFile("huge.txt", "text/plain", null, -1, OWNER, stream("aaaabbbbccccddddeeee")));
+
+        Mockito.verify(amazonS3).abortMultipartUpload(ArgumentMatchers.any(AbortMultipartUploadRequest.class));
+        Mockito.verify(amazonS3, Mockito.never()).completeMultipartUpload(ArgumentMatchers.any());
+        Mockito.verifyNoInteractions(fileService);
+        Assertions.assertEquals(3, meterRegistry.get("s3.upload.buffers").gauge().value());
+    }
+
+    private static FileDTO file(long id, String name) {
+        FileDTO file = new FileDTO();
+        file.setId(id);
+        file.setName(name);
+        return file;
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
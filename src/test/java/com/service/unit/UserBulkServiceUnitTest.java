@@ -0,0 +1,134 @@
+package com.service.unit;
+
+import com.service.api.form.UserPatchForm;
+import com.service.api.response.BulkResponse;
+import com.service.config.Translator;
+import com.service.exception.ConflictException;
+import com.service.service.RevocationService;
+import com.service.service.RoleService;
+import com.service.service.UserBulkService;
+import com.service.service.UserCache;
+import com.service.service.UserSuggestService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@ExtendWith(TranslatorExtension.class)
+@Slf4j
+class UserBulkServiceUnitTest {
+    private JdbcTemplate jdbcTemplate;
+    private UserCache userCache;
+    private RevocationService revocationService;
+    private UserBulkService service;
+    private final List<String> statements = new ArrayList<>();
+    private final List<Object[]> arrays = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        userCache = Mockito.mock(UserCache.class);
+        revocationService = Mockito.mock(RevocationService.class);
+        service = new UserBulkService(jdbcTemplate, userCache, Mockito.mock(UserSuggestService.class),
+                Mockito.mock(RoleService.class), revocationService);
+    }
+
+    /**
+     * Runs the statement creator against a mock connection, then hands the given rows to the row handler
+     */
+    @SafeVarargs
+    private void mockRows(Map<String, Object>... rows) {
+        Mockito.doAnswer(invocation -> {
+            Connection connection = Mockito.mock(Connection.class);
+            Mockito.when(connection.prepareStatement(ArgumentMatchers.anyString())).thenAnswer(call -> {
+                statements.add(call.getArgument(0));
+                return Mockito.mock(PreparedStatement.class);
+            });
+            Mockito.when(connection.createArrayOf(ArgumentMatchers.anyString(), ArgumentMatchers.any())).thenAnswer(call -> {
+                arrays.add(call.getArgument(1));
+                return null;
+            });
+            invocation.<PreparedStatementCreator>getArgument(0).createPreparedStatement(connection);
+            for (Map<String, Object> row : rows) {
+                ResultSet rs = Mockito.mock(ResultSet.class);
+                Mockito.when(rs.getLong(ArgumentMatchers.anyString())).thenAnswer(call -> row.get(call.<String>getArgument(0)));
+                Mockito.when(rs.getBoolean(ArgumentMatchers.anyString())).thenAnswer(call -> row.getOrDefault(call.<String>getArgument(0), false));
+                Mockito.when(rs.getString(ArgumentMatchers.anyString())).thenAnswer(call -> row.get(call.<String>getArgument(0)));
+                invocation.<RowCallbackHandler>getArgument(1).processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(ArgumentMatchers.any(PreparedStatementCreator.class), ArgumentMatchers.any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void patchReportsEachId() {
+        log.info("Testing bulk patch binds one array per column and reports updated, conflict and not found ids");
+
+        mockRows(Map.of("id", 1L, "found", true, "updated", true, "old_username", "user1", "username", "renamed", "email", "user1@email.com"),
+                Map.of("id", 2L, "found", true),
+                Map.of("id", 3L));
+
+        BulkResponse response = service.patch(List.of(
+                UserPatchForm.builder().id(1L).username("renamed").build(),
+                UserPatchForm.builder().id(2L).username("taken").build(),
+                UserPatchForm.builder().id(3L).email("user3@email.com").build()));
+
+        Assertions.assertTrue(statements.get(0).contains("UPDATE tbl_users"));
+        Assertions.assertArrayEquals(new Object[]{1L, 2L, 3L}, arrays.get(0));
+        Assertions.assertArrayEquals(new Object[]{null, null, "user3@email.com"}, arrays.get(1));
+        Assertions.assertArrayEquals(new Object[]{"renamed", "taken", null}, arrays.get(2));
+        Assertions.assertEquals(1, response.getSucceeded());
+        Assertions.assertEquals(List.of(BulkResponse.UPDATED, BulkResponse.CONFLICT, BulkResponse.NOT_FOUND),
+                response.getItems().stream().map(BulkResponse.Item::getStatus).collect(Collectors.toList()));
+        Mockito.verify(userCache).invalidate(ArgumentMatchers.<Collection<Long>>argThat(ids -> ids.equals(Set.of(1L))));
+    }
+
+    @Test
+    void patchConflictsOnUniqueIndex() {
+        log.info("Testing a username taken by a concurrent write is a conflict, not a server error");
+
+        Mockito.doThrow(new DuplicateKeyException("tbl_users_username_key"))
+                .when(jdbcTemplate).query(ArgumentMatchers.any(PreparedStatementCreator.class), ArgumentMatchers.any(RowCallbackHandler.class));
+
+        ConflictException e = Assertions.assertThrows(ConflictException.class,
+                () -> service.patch(List.of(UserPatchForm.builder().id(1L).username("taken").build())));
+        Assertions.assertEquals(Translator.toLocale("user-username-taken"), e.getMessage());
+        Mockito.verifyNoInteractions(userCache);
+    }
+
+    @Test
+    void deleteRevokesDeletedUsers() {
+        log.info("Testing bulk delete revokes and invalidates only the users it deleted");
+
+        mockRows(Map.of("id", 1L, "username", "user1"));
+
+        BulkResponse response = service.delete(List.of(1L, 2L));
+
+        Assertions.assertTrue(statements.get(0).contains("DELETE FROM tbl_token"));
+        Assertions.assertArrayEquals(new Object[]{1L, 2L}, arrays.get(0));
+        Assertions.assertEquals(List.of(BulkResponse.DELETED, BulkResponse.NOT_FOUND),
+                response.getItems().stream().map(BulkResponse.Item::getStatus).collect(Collectors.toList()));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> usernames = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(revocationService).revokeUsers(usernames.capture());
+        Assertions.assertEquals(List.of("user1"), new ArrayList<>(usernames.getValue()));
+    }
+}
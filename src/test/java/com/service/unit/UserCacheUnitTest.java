@@ -0,0 +1,96 @@
+package com.service.unit;
+
+import com.service.model.AppUser;
+import com.service.repository.UserRepo;
+import com.service.service.UserCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Optional;
+
+@Slf4j
+class UserCacheUnitTest {
+    private UserRepo userRepo;
+    private UserCache userCache;
+    private final AppUser sysadmin = AppUser.builder().id(1L).username("sysadmin").email("sysadmin@email.com").build();
+
+    @BeforeEach
+    void setUp() {
+        userRepo = Mockito.mock(UserRepo.class);
+        // listener thread is not started, notifications go to a mock
+        userCache = new UserCache(userRepo, null, Mockito.mock(JdbcTemplate.class), new SimpleMeterRegistry(), 100, 60_000);
+    }
+
+    @Test
+    void serveRepeatedLookupsFromMemory() {
+        log.info("Testing users are loaded once by id, username and email");
+
+        Mockito.when(userRepo.findByUsername("sysadmin")).thenReturn(sysadmin);
+
+        Assertions.assertEquals(1L, userCache.findByUsername("sysadmin").getId());
+        Assertions.assertEquals("sysadmin", userCache.findById(1L).orElseThrow().getUsername());
+        Assertions.assertEquals("sysadmin", userCache.findByUsername("sysadmin").getUsername());
+        Mockito.verify(userRepo, Mockito.times(1)).findByUsername("sysadmin");
+        Mockito.verify(userRepo, Mockito.never()).findById(1L);
+    }
+
+    @Test
+    void returnCopies() {
+        log.info("Testing callers can not change cached users");
+
+        Mockito.when(userRepo.findById(1L)).thenReturn(Optional.of(sysadmin));
+
+        userCache.findById(1L).orElseThrow().setUsername("changed");
+        Assertions.assertEquals("sysadmin", userCache.findById(1L).orElseThrow().getUsername());
+    }
+
+    @Test
+    void reloadLaggingVersion() {
+        log.info("Testing a cached user behind the version just read is loaded again");
+
+        AppUser stale = sysadmin.toBuilder().version(2L).build();
+        AppUser current = sysadmin.toBuilder().username("root").version(3L).build();
+        Mockito.when(userRepo.findById(1L)).thenReturn(Optional.of(stale), Optional.of(current));
+
+        Assertions.assertEquals(2L, userCache.findById(1L).orElseThrow().getVersion());
+        Assertions.assertEquals(2L, userCache.findById(1L, 2L).orElseThrow().getVersion());
+        Assertions.assertEquals("root", userCache.findById(1L, 3L).orElseThrow().getUsername());
+        Assertions.assertEquals(3L, userCache.findById(1L).orElseThrow().getVersion());
+        Mockito.verify(userRepo, Mockito.times(2)).findById(1L);
+    }
+
+    @Test
+    void reloadAfterInvalidation() {
+        log.info("Testing renamed user is loaded again after invalidation");
+
+        AppUser renamed = sysadmin.toBuilder().username("root").build();
+        Mockito.when(userRepo.findById(1L)).thenReturn(Optional.of(sysadmin), Optional.of(renamed));
+        Mockito.when(userRepo.findByUsername("sysadmin")).thenReturn(null);
+
+        Assertions.assertEquals("sysadmin", userCache.findById(1L).orElseThrow().getUsername());
+        userCache.invalidate(1L);
+        Assertions.assertEquals("root", userCache.findById(1L).orElseThrow().getUsername());
+        Assertions.assertNull(userCache.findByUsername("sysadmin"));
+    }
+
+    @Test
+    void skipRowLoadedBeforeInvalidation() {
+        log.info("Testing a row loaded while the user was invalidated is not cached");
+
+        AppUser renamed = sysadmin.toBuilder().email("root@email.com").build();
+        Mockito.when(userRepo.findByUsername("sysadmin")).thenAnswer(invocation -> {
+            // the row was read, then a writer saved its change and invalidated the user
+            userCache.invalidate(1L);
+            return sysadmin;
+        }).thenReturn(renamed);
+
+        Assertions.assertEquals("sysadmin@email.com", userCache.findByUsername("sysadmin").getEmail());
+        Assertions.assertEquals("root@email.com", userCache.findByUsername("sysadmin").getEmail());
+        Mockito.verify(userRepo, Mockito.times(2)).findByUsername("sysadmin");
+    }
+}
@@ -0,0 +1,108 @@
+package com.service.unit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.service.exception.ServiceUnavailableException;
+import com.service.service.UserExportService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+@ExtendWith(TranslatorExtension.class)
+@Slf4j
+class UserExportServiceUnitTest {
+    private static final LinkedHashSet<String> FIELDS = new LinkedHashSet<>(List.of("id", "username", "email"));
+
+    private JdbcTemplate jdbcTemplate;
+    private UserExportService service;
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+        Mockito.when(transactionManager.getTransaction(ArgumentMatchers.any())).thenReturn(new SimpleTransactionStatus());
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        service = new UserExportService(jdbcTemplate, transactionManager, new ObjectMapper(), new SimpleMeterRegistry(), 100, 1);
+    }
+
+    /**
+     * Cursor over the given rows, one array of column values per row
+     */
+    private void mockRows(Object[]... rows) throws Exception {
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        AtomicInteger current = new AtomicInteger(-1);
+        Mockito.when(rs.next()).thenAnswer(invocation -> current.incrementAndGet() < rows.length);
+        Mockito.when(rs.getObject(ArgumentMatchers.anyInt()))
+                .thenAnswer(invocation -> rows[current.get()][invocation.<Integer>getArgument(0) - 1]);
+        Mockito.when(jdbcTemplate.query(ArgumentMatchers.any(PreparedStatementCreator.class), ArgumentMatchers.<ResultSetExtractor<Long>>any()))
+                .thenAnswer(invocation -> invocation.<ResultSetExtractor<Long>>getArgument(1).extractData(rs));
+    }
+
+    @Test
+    void writeCsv() throws Exception {
+        log.info("Testing CSV export quotes values with separators, quotes and line breaks");
+
+        mockRows(new Object[]{1L, "user1", "user1@email.com"},
+                new Object[]{2L, "a,b", "say \"hi\""},
+                new Object[]{3L, "line\nbreak", null});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.export(FIELDS, null, null, true, false).writeTo(out);
+
+        Assertions.assertEquals("id,username,email\n" +
+                "1,user1,user1@email.com\n" +
+                "2,\"a,b\",\"say \"\"hi\"\"\"\n" +
+                "3,\"line\nbreak\",\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writeNdjsonGzip() throws Exception {
+        log.info("Testing NDJSON export writes one object per line, compressed");
+
+        mockRows(new Object[]{1L, "user1", "user1@email.com"}, new Object[]{2L, "user\"2", null});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.export(FIELDS, null, null, false, true).writeTo(out);
+
+        String body = new String(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes(), StandardCharsets.UTF_8);
+        Assertions.assertEquals(Arrays.asList(
+                "{\"id\":1,\"username\":\"user1\",\"email\":\"user1@email.com\"}",
+                "{\"id\":2,\"username\":\"user\\\"2\",\"email\":null}"), Arrays.asList(body.split("\n")));
+    }
+
+    @Test
+    void limitConcurrentExports() throws Exception {
+        log.info("Testing exports over the limit are refused until a running one is released");
+
+        mockRows();
+
+        UserExportService.Export running = service.export(FIELDS, null, null, true, false);
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> service.export(FIELDS, null, null, true, false));
+
+        running.writeTo(new ByteArrayOutputStream());
+        UserExportService.Export next = service.export(FIELDS, null, null, true, false);
+        // releasing twice must not free a second slot
+        next.release();
+        next.release();
+        service.export(FIELDS, null, null, true, false);
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> service.export(FIELDS, null, null, true, false));
+    }
+}
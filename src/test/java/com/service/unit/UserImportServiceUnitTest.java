@@ -0,0 +1,137 @@
+package com.service.unit;
+
+import com.service.api.response.ImportResponse;
+import com.service.config.PooledPasswordEncoder;
+import com.service.config.Translator;
+import com.service.model.AppUser;
+import com.service.service.RoleService;
+import com.service.service.UserImportService;
+import com.service.service.UserSuggestService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@ExtendWith(TranslatorExtension.class)
+@Slf4j
+class UserImportServiceUnitTest {
+    private JdbcTemplate jdbcTemplate;
+    private List<String> existing;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        existing = new ArrayList<>();
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        // runs the statement creator against a mock connection and inserts each new username once, like ON CONFLICT
+        Mockito.when(jdbcTemplate.query(ArgumentMatchers.any(PreparedStatementCreator.class), ArgumentMatchers.<RowMapper<AppUser>>any()))
+                .thenAnswer(invocation -> {
+                    List<String[]> arrays = new ArrayList<>();
+                    Connection connection = Mockito.mock(Connection.class);
+                    Mockito.when(connection.prepareStatement(ArgumentMatchers.anyString())).thenReturn(Mockito.mock(PreparedStatement.class));
+                    Mockito.when(connection.createArrayOf(ArgumentMatchers.eq("text"), ArgumentMatchers.any())).thenAnswer(call -> {
+                        arrays.add(call.getArgument(1));
+                        return null;
+                    });
+                    invocation.<PreparedStatementCreator>getArgument(0).createPreparedStatement(connection);
+
+                    Set<String> usernames = new LinkedHashSet<>(List.of(arrays.get(1)));
+                    usernames.removeAll(existing);
+                    existing.addAll(usernames);
+                    return usernames.stream()
+                            .map(username -> AppUser.builder().id((long) existing.indexOf(username) + 1).username(username).build())
+                            .collect(Collectors.toList());
+                });
+    }
+
+    private UserImportService service(int batchSize, int maxErrors) {
+        PooledPasswordEncoder encoder = Mockito.mock(PooledPasswordEncoder.class);
+        Mockito.when(encoder.encodeAll(ArgumentMatchers.anyList())).thenAnswer(invocation -> new ArrayList<>(invocation.<List<?>>getArgument(0)));
+        return new UserImportService(jdbcTemplate, encoder, Validation.buildDefaultValidatorFactory().getValidator(),
+                Jackson2ObjectMapperBuilder.json().build(), Mockito.mock(RoleService.class), Mockito.mock(UserSuggestService.class),
+                new SimpleMeterRegistry(), batchSize, maxErrors);
+    }
+
+    private static ByteArrayInputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void importQuotedCsv() throws Exception {
+        log.info("Testing CSV with quoted fields and a byte order mark");
+
+        ImportResponse response = service(10, 10).importUsers(body("\uFEFFusername,email,password\n" +
+                "alice,alice@email.com,\"pa,ss\"\"word\"\n" +
+                "\"bob\",bob@email.com,secret\n"), UserImportService.CSV);
+
+        Assertions.assertEquals(2, response.getTotal());
+        Assertions.assertEquals(2, response.getImported());
+        Assertions.assertTrue(response.getErrors().isEmpty());
+        Assertions.assertEquals(List.of("alice", "bob"), existing);
+    }
+
+    @Test
+    void reportMalformedRows() throws Exception {
+        log.info("Testing rows with another column count or an unterminated quote are row errors");
+
+        ImportResponse response = service(10, 10).importUsers(body("username,email,password\n" +
+                "alice,alice@email.com\n" +
+                "bob,\"bob@email.com,secret\n" +
+                "carol,carol@email.com,secret\n"), UserImportService.CSV);
+
+        Assertions.assertEquals(3, response.getTotal());
+        Assertions.assertEquals(1, response.getImported());
+        Assertions.assertEquals(2, response.getFailed());
+        Assertions.assertEquals(List.of(1L, 2L), response.getErrors().stream()
+                .map(ImportResponse.RowError::getRow).collect(Collectors.toList()));
+        Assertions.assertEquals(List.of(Translator.toLocale("user-import-malformed")), response.getErrors().get(0).getMessages());
+    }
+
+    @Test
+    void reportUsernameRepeatedInBatch() throws Exception {
+        log.info("Testing the second row of a username repeated in one batch is a duplicate");
+
+        ImportResponse response = service(10, 10).importUsers(body(
+                "{\"username\":\"alice\",\"email\":\"alice@email.com\",\"password\":\"secret\"}\n" +
+                "{\"username\":\"alice\",\"email\":\"other@email.com\",\"password\":\"secret\"}\n"), UserImportService.NDJSON);
+
+        Assertions.assertEquals(1, response.getImported());
+        Assertions.assertEquals(1, response.getFailed());
+        Assertions.assertEquals(2L, response.getErrors().get(0).getRow());
+        Assertions.assertEquals(List.of(Translator.toLocale("user-import-duplicate")), response.getErrors().get(0).getMessages());
+    }
+
+    @Test
+    void truncateErrors() throws Exception {
+        log.info("Testing only the first errors are kept while all failures are counted");
+
+        StringBuilder csv = new StringBuilder("username,email,password\n");
+        for (int i = 0; i < 5; i++) {
+            csv.append("user").append(i).append(",user").append(i).append("@email.com\n");
+        }
+        ImportResponse response = service(2, 3).importUsers(body(csv.toString()), UserImportService.CSV);
+
+        Assertions.assertEquals(5, response.getFailed());
+        Assertions.assertEquals(3, response.getErrors().size());
+        Assertions.assertTrue(response.isErrorsTruncated());
+        Mockito.verifyNoInteractions(jdbcTemplate);
+    }
+}
@@ -0,0 +1,84 @@
+package com.service.unit;
+
+import com.service.config.Translator;
+import com.service.exception.ConflictException;
+import com.service.exception.ResourceNotFoundException;
+import com.service.service.UserPatchService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.List;
+import java.util.Map;
+
+@ExtendWith(TranslatorExtension.class)
+@Slf4j
+class UserPatchServiceUnitTest {
+    private JdbcTemplate jdbcTemplate;
+    private UserPatchService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        service = new UserPatchService(jdbcTemplate);
+    }
+
+    private void mockUpdate(List<UserPatchService.Result> results) {
+        Mockito.when(jdbcTemplate.query(ArgumentMatchers.anyString(), ArgumentMatchers.<RowMapper<UserPatchService.Result>>any(),
+                ArgumentMatchers.<Object>any())).thenReturn(results);
+    }
+
+    @Test
+    void updateCurrentVersion() throws Exception {
+        log.info("Testing patch of the current version returns the new one without a second query");
+
+        mockUpdate(List.of(new UserPatchService.Result(4L, "renamed", "someone@email.com", "someone")));
+
+        Assertions.assertEquals(4L, service.update(1L, 3L, Map.of("username", "renamed")).getVersion());
+        Mockito.verify(jdbcTemplate, Mockito.never()).queryForList(ArgumentMatchers.anyString(),
+                ArgumentMatchers.eq(Long.class), ArgumentMatchers.<Object>any());
+    }
+
+    @Test
+    void updateMissingUser() {
+        log.info("Testing patch of a missing user is not found");
+
+        mockUpdate(List.of());
+        Mockito.when(jdbcTemplate.queryForList(ArgumentMatchers.anyString(), ArgumentMatchers.eq(Long.class),
+                ArgumentMatchers.<Object>any())).thenReturn(List.of());
+
+        Assertions.assertThrows(ResourceNotFoundException.class, () -> service.update(1L, 3L, Map.of("email", "other@email.com")));
+    }
+
+    @Test
+    void updateStaleVersion() {
+        log.info("Testing patch of a version no longer current is a conflict");
+
+        mockUpdate(List.of());
+        Mockito.when(jdbcTemplate.queryForList(ArgumentMatchers.anyString(), ArgumentMatchers.eq(Long.class),
+                ArgumentMatchers.<Object>any())).thenReturn(List.of(5L));
+
+        ConflictException e = Assertions.assertThrows(ConflictException.class,
+                () -> service.update(1L, 3L, Map.of("email", "other@email.com")));
+        Assertions.assertEquals(Translator.toLocale("user-version-conflict"), e.getMessage());
+    }
+
+    @Test
+    void updateTakenUsername() {
+        log.info("Testing patch to a username of another user is a conflict");
+
+        Mockito.when(jdbcTemplate.query(ArgumentMatchers.anyString(), ArgumentMatchers.<RowMapper<UserPatchService.Result>>any(),
+                ArgumentMatchers.<Object>any())).thenThrow(new DuplicateKeyException("tbl_users_username_key"));
+
+        ConflictException e = Assertions.assertThrows(ConflictException.class,
+                () -> service.update(1L, 3L, Map.of("username", "taken")));
+        Assertions.assertEquals(Translator.toLocale("user-username-taken"), e.getMessage());
+    }
+}
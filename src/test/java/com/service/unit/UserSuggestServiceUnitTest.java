@@ -0,0 +1,51 @@
+package com.service.unit;
+
+import com.service.model.AppUser;
+import com.service.service.UserSuggestService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+@Slf4j
+class UserSuggestServiceUnitTest {
+    private UserSuggestService suggestService;
+
+    @BeforeEach
+    void setUp() {
+        suggestService = new UserSuggestService(null, new SimpleMeterRegistry());
+        suggestService.put(user(1L, "sysadmin", "sysadmin@email.com"));
+        suggestService.put(user(2L, "admin", "admin@email.com"));
+        suggestService.put(user(3L, "manager", "boss@email.com"));
+    }
+
+    @Test
+    void suggestByUsernameAndEmail() {
+        log.info("Testing suggestions match prefix of username or email");
+
+        Assertions.assertEquals(List.of("admin"), suggestService.suggest("AD", 10));
+        Assertions.assertEquals(List.of("manager"), suggestService.suggest("bo", 10));
+        Assertions.assertEquals(List.of("sysadmin"), suggestService.suggest("sys", 10));
+        Assertions.assertEquals(3, suggestService.suggest("", 10).size());
+        Assertions.assertEquals(1, suggestService.suggest("", 1).size());
+    }
+
+    @Test
+    void updateAndRemoveUser() {
+        log.info("Testing index follows renamed and deleted users");
+
+        suggestService.put(user(2L, "operator", "admin@email.com"));
+        Assertions.assertEquals(List.of("operator"), suggestService.suggest("admin", 10));
+        Assertions.assertEquals(List.of("operator"), suggestService.suggest("op", 10));
+
+        suggestService.remove(2L);
+        Assertions.assertTrue(suggestService.suggest("admin", 10).isEmpty());
+    }
+
+    private AppUser user(long id, String username, String email) {
+        return AppUser.builder().id(id).username(username).email(email).build();
+    }
+}
@@ -0,0 +1,55 @@
+package com.service.unit;
+
+import com.service.config.VerifiedTokenCache;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+@Slf4j
+class VerifiedTokenCacheUnitTest {
+
+    private final UsernamePasswordAuthenticationToken authentication =
+            new UsernamePasswordAuthenticationToken("sysadmin", null, List.of(new SimpleGrantedAuthority("SYSTEM_ADMIN")));
+
+    @Test
+    void cacheVerifiedToken() {
+        log.info("Testing verified token is served from cache");
+
+        VerifiedTokenCache cache = new VerifiedTokenCache(100);
+        cache.put("token", entry(System.currentTimeMillis() + 60_000));
+
+        Assertions.assertSame(authentication, cache.get("token").getAuthentication());
+        Assertions.assertNull(cache.get("other-token"));
+    }
+
+    @Test
+    void skipExpiredToken() {
+        log.info("Testing expired token is never cached");
+
+        VerifiedTokenCache cache = new VerifiedTokenCache(100);
+        cache.put("expired", entry(System.currentTimeMillis() - 1000));
+        cache.put("no-expiry", entry(0));
+
+        Assertions.assertNull(cache.get("expired"));
+        Assertions.assertNull(cache.get("no-expiry"));
+    }
+
+    @Test
+    void invalidateAll() {
+        log.info("Testing cache invalidation");
+
+        VerifiedTokenCache cache = new VerifiedTokenCache(100);
+        cache.put("token", entry(System.currentTimeMillis() + 60_000));
+        cache.invalidateAll();
+
+        Assertions.assertNull(cache.get("token"));
+    }
+
+    private VerifiedTokenCache.Entry entry(long expiresAt) {
+        return new VerifiedTokenCache.Entry(authentication, "jti", System.currentTimeMillis(), expiresAt);
+    }
+}